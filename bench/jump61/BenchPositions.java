@@ -0,0 +1,97 @@
+package jump61;
+
+import java.util.Random;
+
+import static jump61.Color.*;
+
+/** Fixed, seeded positions on which the benchmarks run, so that results
+ *  are comparable from one engine change to the next.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class BenchPositions {
+
+    /** Seed from which all benchmark positions are generated. */
+    static final long SEED = 61;
+
+    /** Not instantiable. */
+    private BenchPositions() {
+    }
+
+    /** Returns an unfinished N x N position reached by N * N random legal
+     *  moves from an empty board, as chosen by a generator seeded with
+     *  SEED.  The result has no undo history. */
+    static MutableBoard midgame(int N) {
+        Random random = new Random(SEED);
+        while (true) {
+            MutableBoard b = new MutableBoard(N);
+            for (int k = 0; k < N * N && !b.won(); k += 1) {
+                Color player = b.whoseMove();
+                int n;
+                do {
+                    n = random.nextInt(N * N);
+                } while (!b.isLegal(player, n));
+                b.addSpot(player, n);
+            }
+            if (!b.won()) {
+                return new MutableBoard(b);
+            }
+        }
+    }
+
+    /** Returns an N x N position, with blue to move, in which every
+     *  square holds as many spots as it has neighbors and all but the
+     *  last square (see trigger) are red.  A blue move on the last square
+     *  sets off a chain reaction over the whole board. */
+    static MutableBoard critical(int N) {
+        MutableBoard b = new MutableBoard(N);
+        for (int n = 0; n < N * N; n += 1) {
+            b.set(n, b.neighbors(n), n == trigger(N) ? BLUE : RED);
+        }
+        b.setMoves(1);
+        return b;
+    }
+
+    /** Returns the square of critical(N) on which blue starts the chain
+     *  reaction. */
+    static int trigger(int N) {
+        return N * N - 1;
+    }
+
+    /** Returns a copy of B, with no undo history, in the board
+     *  representation named REPRESENTATION: "mutable" for a
+     *  MutableBoard, "sparse" for a SparseBoard, or "played" for the one
+     *  that Board.mutableCopy chooses for searches and playouts (a
+     *  BitBoard on boards of up to 8 x 8). */
+    static Board represent(MutableBoard b, String representation) {
+        switch (representation) {
+        case "mutable":
+            return new MutableBoard(b);
+        case "sparse":
+            return new SparseBoard(b);
+        case "played":
+            return Board.mutableCopy(null, b);
+        default:
+            throw new IllegalArgumentException(
+                "unknown board representation: " + representation);
+        }
+    }
+
+    /** Returns a legal move for the player to move on B that starts no
+     *  cascade, if there is one, and otherwise any legal move. */
+    static int quietMove(Board b) {
+        Color player = b.whoseMove();
+        int cells = b.size() * b.size();
+        int fallback = -1;
+        for (int k = 0; k < cells; k += 1) {
+            int n = (k + cells / 2) % cells;
+            if (b.isLegal(player, n)) {
+                if (b.spots(n) < b.neighbors(n)) {
+                    return n;
+                }
+                fallback = n;
+            }
+        }
+        return fallback;
+    }
+
+}
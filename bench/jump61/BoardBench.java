@@ -0,0 +1,110 @@
+package jump61;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static jump61.Color.*;
+
+/** Benchmarks of the basic board operations, on the seeded positions of
+ *  BenchPositions held in each board representation.  Benchmarks that
+ *  move also undo, so that every invocation starts from the same
+ *  position.
+ *  @author Iskander Rakhmanberdiyev
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBench {
+
+    /** Number of squares on a side of the boards measured. */
+    @Param({ "2", "6", "10", "32" })
+    public int size;
+
+    /** Board representation measured (see BenchPositions.represent). */
+    @Param({ "played", "mutable", "sparse" })
+    public String representation;
+
+    /** Set up the positions for the current size and representation. */
+    @Setup
+    public void setUp() {
+        _midgame = BenchPositions.represent(BenchPositions.midgame(size),
+                                            representation);
+        _view = new ConstantBoard(_midgame);
+        _player = _midgame.whoseMove();
+        _quiet = BenchPositions.quietMove(_midgame);
+        _critical = BenchPositions.represent(BenchPositions.critical(size),
+                                             representation);
+        _trigger = BenchPositions.trigger(size);
+        _target = BenchPositions.represent(new MutableBoard(size),
+                                           representation);
+    }
+
+    /** A move that starts no cascade, and its undoing. */
+    @Benchmark
+    public void addSpotQuiet() {
+        _midgame.addSpot(_player, _quiet);
+        _midgame.undo();
+    }
+
+    /** A move that sets off a chain reaction over the whole board, and
+     *  its undoing. */
+    @Benchmark
+    public void addSpotChainReaction() {
+        _critical.addSpot(BLUE, _trigger);
+        _critical.undo();
+    }
+
+    /** Copying a mid-game position. */
+    @Benchmark
+    public void copy() {
+        _target.copy(_midgame);
+    }
+
+    /** Checking a mid-game position for a win. */
+    @Benchmark
+    public boolean won() {
+        return _midgame.won();
+    }
+
+    /** Counting the squares of one color. */
+    @Benchmark
+    public int numOfColor() {
+        return _midgame.numOfColor(RED);
+    }
+
+    /** Dumping a position through a read-only view. */
+    @Benchmark
+    public String dump() {
+        return _view.toString();
+    }
+
+    /** A mid-game position. */
+    private Board _midgame;
+    /** A read-only view of _midgame. */
+    private Board _view;
+    /** The player to move in _midgame. */
+    private Color _player;
+    /** A quiet move in _midgame. */
+    private int _quiet;
+    /** A position on the edge of a chain reaction. */
+    private Board _critical;
+    /** The move that starts the chain reaction in _critical. */
+    private int _trigger;
+    /** Destination of copies. */
+    private Board _target;
+
+}
@@ -0,0 +1,75 @@
+package jump61;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static jump61.Color.*;
+
+/** Benchmark of a fixed-depth, single-threaded AI search from a seeded
+ *  mid-game position, held in each board representation.  The AI's
+ *  cache is cleared before every search, so each measures a search from
+ *  scratch.
+ *  @author Iskander Rakhmanberdiyev
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBench {
+
+    /** Number of squares on a side of the boards measured. */
+    @Param({ "2", "6", "10", "32" })
+    public int size;
+
+    /** Board representation searched (see BenchPositions.represent). */
+    @Param({ "played", "mutable", "sparse" })
+    public String representation;
+
+    /** Depth of the searches. */
+    @Param({ "3" })
+    public int depth;
+
+    /** Set up the AI and position for the current size. */
+    @Setup
+    public void setUp() {
+        Game game = new Game(new StringReader(""), new StringWriter(),
+                             new StringWriter(), new StringWriter());
+        _ai = new AI(game, RED);
+        _board = BenchPositions.represent(BenchPositions.midgame(size),
+                                          representation);
+    }
+
+    /** Forget earlier searches. */
+    @Setup(Level.Invocation)
+    public void clear() {
+        _ai.clearCache();
+    }
+
+    /** One search. */
+    @Benchmark
+    public AI.Move search() {
+        return _ai.findMove(_board, depth);
+    }
+
+    /** The player searching. */
+    private AI _ai;
+    /** The position searched. */
+    private Board _board;
+
+}
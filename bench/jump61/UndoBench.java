@@ -0,0 +1,79 @@
+package jump61;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static jump61.Color.*;
+
+/** Benchmark of undo by itself.  Each invocation takes back full-board
+ *  chain reactions on BATCH copies of a position, made (outside the
+ *  measurement) just before it, so that the cost of the per-invocation
+ *  setup is spread over BATCH undos, and the result is the time of one.
+ *  @author Iskander Rakhmanberdiyev
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UndoBench {
+
+    /** Number of undos per invocation. */
+    static final int BATCH = 64;
+
+    /** Number of squares on a side of the boards measured. */
+    @Param({ "2", "6", "10", "32" })
+    public int size;
+
+    /** Board representation measured (see BenchPositions.represent). */
+    @Param({ "played", "mutable", "sparse" })
+    public String representation;
+
+    /** Set up the positions for the current size and representation. */
+    @Setup
+    public void setUp() {
+        MutableBoard critical = BenchPositions.critical(size);
+        _critical = new Board[BATCH];
+        for (int k = 0; k < BATCH; k += 1) {
+            _critical[k] = BenchPositions.represent(critical, representation);
+        }
+        _trigger = BenchPositions.trigger(size);
+    }
+
+    /** Make the chain reactions to be undone. */
+    @Setup(Level.Invocation)
+    public void move() {
+        for (Board b : _critical) {
+            b.addSpot(BLUE, _trigger);
+        }
+    }
+
+    /** Undoing a full-board chain reaction. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void undoChainReaction() {
+        for (Board b : _critical) {
+            b.undo();
+        }
+    }
+
+    /** Copies of a position on the edge of a chain reaction. */
+    private Board[] _critical;
+    /** The move that starts the chain reactions in _critical. */
+    private int _trigger;
+
+}
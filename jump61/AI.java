@@ -1,9 +1,59 @@
 package jump61;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-/** An automated Player.
+/** An automated Player.  Chooses moves by a negamax alpha-beta search
+ *  on a private copy of the game board, caching results in a
+ *  transposition table and ordering moves so that the most promising
+ *  (the cached best move, moves that start cascades, killer moves and
+ *  moves with a good history) are tried first.  The search deepens
+ *  iteratively, one move at a time, until it reaches its maximum depth
+ *  or runs out of the time the game allows for the move.
+ *
+ *  When the game allows more than one search thread, helper threads
+ *  search the same position at the same time, each on its own copy of
+ *  the board, sharing only the transposition table ("lazy SMP").  The
+ *  helpers' results reach the main search only through the table.
+ *
+ *  Alternatively, in split mode, each iteration searches the first
+ *  root move alone and then the remaining root moves in parallel on a
+ *  fork/join pool, each task on its own board, using the best value
+ *  found so far as its lower bound ("young brothers wait").  Split mode
+ *  uses only table entries of exactly the depth required and prefers
+ *  the lowest-numbered square among equally good root moves, so for a
+ *  given depth its result is the same whatever the number of threads
+ *  and however their work interleaves.
+ *
+ *  The transposition table holds opening positions, where few squares
+ *  are occupied, under their canonical keys (see Symmetry), so that a
+ *  position and its rotations and reflections share an entry, whose best
+ *  move is recorded in their common orientation.  At the root, only one
+ *  of each set of moves that lead to images of one another is
+ *  searched.
+ *
+ *  While the game's opening book (see OpeningBook) has moves for the
+ *  current position, the AI plays one of them instead of searching.
+ *  Positions covered by an endgame tablebase (see Tablebase) are played
+ *  from the tablebase at the root and valued from it within searches.
+ *
+ *  If the game asks it to ponder, then after each of its moves the AI
+ *  guesses its opponent's reply (the best move recorded for the
+ *  opponent's position in the transposition table, or found by a
+ *  shallow search) and searches the position after it in a background
+ *  thread, on a private board, until its next turn.  Then it stops that
+ *  search, and if the guess was right, replies from the pondered result
+ *  or, if that is not yet deep enough, continues with the rest of its
+ *  time on the warmed transposition table.
  *  @author Iskander Rakhmanberdiyev
  */
 class AI extends Player {
@@ -13,74 +63,886 @@ class AI extends Player {
      */
     AI(Game game, Color color) {
         super(game, color);
-        _board = (MutableBoard) getGame()._board;
+        _board = Board.mutableCopy(null, getBoard());
+        _searchers = new Searcher[] { new Searcher(0) };
     }
 
     @Override
     void makeMove() {
         Game game = getGame();
-        int move = minmax(getColor(), _board, 4, Integer.MIN_VALUE);
+        Board board = getBoard();
+        Move pondered = stopPondering(board);
+        OpeningBook book = game.openingBook();
+        int move = book == null ? -1 : book.move(board, game);
+        Tablebase table = game.tablebase(board.size());
+        if (move < 0 && table != null) {
+            move = table.bestMove(board);
+        }
+        if (move < 0) {
+            _board = Board.mutableCopy(_board, board);
+            _tablebase = table;
+            setThreads(game.searchThreads());
+            setSplit(game.splitSearch());
+            long budget = game.timeForMove(getColor());
+            int depth = budget > 0 ? MAX_PLY : Defaults.SEARCH_DEPTH;
+            long nodes = nodes(), start = System.nanoTime(), spent;
+            spent = 0;
+            Move best = pondered;
+            if (pondered != null) {
+                nodes = _ponderNodes;
+                spent = _ponderMillis;
+            }
+            if (best == null
+                || (budget > 0 ? spent < budget : best.getDepth() < depth)
+                && Math.abs(best.getVal()) <= WIN_BOUND) {
+                best = findMove(_board, depth,
+                                budget > 0 ? budget - spent : 0);
+            }
+            move = best.getMove();
+            collectStats(best.getDepth(), nodes() - nodes,
+                         spent + (System.nanoTime() - start) / 1000000);
+            game.noteSearch(best.getVal(), _stats);
+        }
         game.makeMove(move);
         game.message("%s moves %d %d\n",
-                     getColor(), _board.row(move), _board.col(move));
-    }
-    /** Return the minimum of CUTOFF and the minmax value of board B
-     *  (which must be mutable) for player P to a search depth of D
-     *  (where D == 0 denotes evaluating just the next move).
-     *  If MOVES is not null and CUTOFF is not exceeded, set MOVES to
-     *  a list of all highest-scoring moves for P; clear it if
-     *  non-null and CUTOFF is exceeded. the contents of B are
-     *  invariant over this call. */
-    private int minmax(Color p, MutableBoard b, int d, int cutoff) {
-        if (d == 0) {
-            return staticEval(p, b);
-        }
-        int size = getGame().getBoard().size();
-        int bestSoFar = -1;
-        for (int i = 0; i < size*size; i++) {
-            if (getGame()._board.isLegal(getColor(), i)) {
-                b.addSpot(p, i);
-                int value = minmax(p.opposite(), b, d - 1, -bestSoFar);
-                b.undo();
-                if (value > cutoff) {
-                    cutoff = value;
-                    bestSoFar = i;
+                     getColor(), board.row(move), board.col(move));
+        if (game.ponder() && !board.won()) {
+            startPondering(board, game.timeForMove(getColor()) > 0 ? MAX_PLY
+                           : Defaults.SEARCH_DEPTH);
+        }
+    }
+
+    @Override
+    void stopGame() {
+        stopPondering(null);
+    }
+
+    @Override
+    String name() {
+        return "minmax";
+    }
+
+    /** Use N threads (N >= 1) for subsequent searches. */
+    void setThreads(int n) {
+        assert n >= 1;
+        if (n == _searchers.length) {
+            return;
+        }
+        Searcher[] searchers = new Searcher[n];
+        for (int k = 0; k < n; k += 1) {
+            searchers[k] =
+                k < _searchers.length ? _searchers[k] : new Searcher(k);
+        }
+        _searchers = searchers;
+        if (_helpers != null && n > 1) {
+            _helpers.setMaximumPoolSize(Math.max(n - 1,
+                                                 _helpers.getCorePoolSize()));
+            _helpers.setCorePoolSize(n - 1);
+            _helpers.setMaximumPoolSize(n - 1);
+        }
+    }
+
+    /** Search in split mode iff SPLIT. */
+    void setSplit(boolean split) {
+        _split = split;
+    }
+
+    /** Return the best move for the player to move on B (which must
+     *  not be won) found by a search to depth D, together with its
+     *  value.  The contents of B are invariant over this call. */
+    Move findMove(Board b, int d) {
+        return findMove(b, d, 0);
+    }
+
+    /** Return the best move for the player to move on B (which must
+     *  not be won), together with its value, found by searching to
+     *  depths 1, 2, ... D in turn.  If MILLIS > 0, stop after about
+     *  MILLIS milliseconds, returning the result of the deepest
+     *  complete search.  The search also stops early if stop() is
+     *  called, or once a forced win or loss is found, but always
+     *  completes the depth-1 search.  The contents of B are invariant
+     *  over this call. */
+    Move findMove(Board b, int d, long millis) {
+        clearStop();
+        return search(b, d, millis);
+    }
+
+    /** Forget any earlier call of stop(), before a call of search(). */
+    void clearStop() {
+        _stopped = false;
+    }
+
+    /** Return the result of findMove(B, D, MILLIS), except that a
+     *  call of stop() made since the last call of clearStop() is not
+     *  forgotten. */
+    Move search(Board b, int d, long millis) {
+        table().newSearch();
+        if (SearchStats.ENABLED) {
+            for (Searcher searcher : _searchers) {
+                searcher._stats.clear();
+            }
+            for (Searcher searcher : _splitSearchers) {
+                searcher._stats.clear();
+            }
+        }
+        _deadline = millis > 0 ? System.nanoTime() + millis * 1000000
+            : Long.MAX_VALUE;
+        if (_split) {
+            return iterateSplit(b, d);
+        }
+        Future<?>[] helpers = startHelpers(b, d);
+        Move result = _searchers[0].iterate(b, d);
+        _stopped = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+        return result;
+    }
+
+    /** Returns my transposition table, allocating it on first use, so
+     *  that players that never search, such as a Game's initial
+     *  opponent when another is chosen, do not hold one. */
+    private TranspositionTable table() {
+        if (_table == null) {
+            _table = new TranspositionTable(Defaults.TABLE_BITS);
+        }
+        return _table;
+    }
+
+    /** Forget the results and move-ordering statistics of all previous
+     *  searches. */
+    void clearCache() {
+        if (_table != null) {
+            _table.clear();
+        }
+        for (Searcher searcher : _searchers) {
+            searcher.reset();
+        }
+        _splitSearchers.clear();
+    }
+
+    /** Report each iteration completed by subsequent searches to
+     *  PROGRESS, as the best move found so far with its value and
+     *  depth, or stop reporting them if PROGRESS is null.  PROGRESS is
+     *  called on the thread running the search. */
+    void setProgress(Consumer<Move> progress) {
+        _progress = progress;
+    }
+
+    /** Returns the total number of positions my searchers have
+     *  visited. */
+    long nodes() {
+        long total;
+        total = 0;
+        for (Searcher searcher : _searchers) {
+            total += searcher._nodes;
+        }
+        for (Searcher searcher : _splitSearchers) {
+            total += searcher._nodes;
+        }
+        return total;
+    }
+
+    /** Set _stats to the statistics of the last search, which reached
+     *  depth DEPTH, visiting NODES positions in MILLIS milliseconds,
+     *  combining the counts of all my searchers. */
+    private void collectStats(int depth, long nodes, long millis) {
+        _stats.clear();
+        _stats.setTotals(depth, nodes, millis);
+        if (SearchStats.ENABLED) {
+            for (Searcher searcher : _searchers) {
+                _stats.add(searcher._stats);
+            }
+            for (Searcher searcher : _splitSearchers) {
+                _stats.add(searcher._stats);
+            }
+        }
+    }
+
+    /** Pass RESULT, the result of an iteration of the main search, to
+     *  the progress reporter, if any. */
+    private void report(Move result) {
+        Consumer<Move> progress = _progress;
+        if (progress != null) {
+            progress.accept(result);
+        }
+    }
+
+    /** Ask a search in progress to stop as soon as possible.  It
+     *  returns the result of its last complete iteration. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Start pondering in a background thread on the position on BOARD,
+     *  where my opponent is to move, searching the position after its
+     *  expected reply to depth D. */
+    private void startPondering(Board board, int d) {
+        if (_ponderer == null) {
+            _ponderer = new ThreadPoolExecutor(
+                1, 1, HELPER_IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                r -> {
+                    Thread thread = new Thread(r, "jump61-ponder");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            _ponderer.allowCoreThreadTimeOut(true);
+        }
+        Board b = Board.mutableCopy(_ponderBoard, board);
+        _ponderBoard = b;
+        _ponderCancelled = false;
+        _ponder = _ponderer.submit(() -> ponder(b, d));
+    }
+
+    /** Guess the reply of the player to move on B, make it, and search
+     *  the resulting position to depth D until stopped, setting
+     *  _ponderKey to its key, _ponderNodes to the value of nodes() when
+     *  the search starts, and _ponderMillis to the time it takes.
+     *  Returns the result of that search, or null if it was not
+     *  started. */
+    private Move ponder(Board b, int d) {
+        Color opponent = b.whoseMove();
+        long[] keys = new long[Symmetry.COUNT];
+        int symmetry = cacheSymmetry(b, keys);
+        long entry = table().probe(keys[symmetry]);
+        int guess = entry == TranspositionTable.MISS ? -1
+            : Symmetry.unapply(symmetry, TranspositionTable.move(entry),
+                               b.size());
+        if (guess < 0 || !b.isLegal(opponent, guess)) {
+            if (!resumePondering()) {
+                return null;
+            }
+            guess = search(b, GUESS_DEPTH, 0).getMove();
+        }
+        b.addSpot(opponent, guess);
+        if (b.won() || !resumePondering()) {
+            return null;
+        }
+        _ponderKey = b.key();
+        _ponderNodes = nodes();
+        long start = System.nanoTime();
+        Move result = search(b, d, 0);
+        _ponderMillis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+
+    /** Clear any request to stop searching, unless pondering has been
+     *  cancelled.  Returns true iff pondering may go on. */
+    private synchronized boolean resumePondering() {
+        if (_ponderCancelled) {
+            return false;
+        }
+        _stopped = false;
+        return true;
+    }
+
+    /** Stop pondering, if I am, and wait for the pondering search to
+     *  end.  Return its result if it searched the position on BOARD, and
+     *  otherwise null. */
+    private Move stopPondering(Board board) {
+        if (_ponder == null) {
+            return null;
+        }
+        synchronized (this) {
+            _ponderCancelled = true;
+            stop();
+        }
+        Move result;
+        try {
+            result = _ponder.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        _ponder = null;
+        if (result == null || board == null || board.key() != _ponderKey) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Start all searchers but the first searching B to depth D in
+     *  helper threads, and return handles on their searches. */
+    private Future<?>[] startHelpers(Board b, int d) {
+        Future<?>[] result = new Future<?>[_searchers.length - 1];
+        if (result.length > 0 && _helpers == null) {
+            _helpers = new ThreadPoolExecutor(
+                result.length, result.length, HELPER_IDLE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                r -> {
+                    Thread thread = new Thread(r, "jump61-search");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            _helpers.allowCoreThreadTimeOut(true);
+        }
+        for (int k = 1; k < _searchers.length; k += 1) {
+            Searcher helper = _searchers[k];
+            helper.setBoard(b);
+            result[k - 1] =
+                _helpers.submit(() -> helper.iterate(helper.board(), d));
+        }
+        return result;
+    }
+
+    /** Return the best move for the player to move on B, found by
+     *  split searches to depths 1, 2, ... D in turn until stopped, as
+     *  described for findMove. */
+    private Move iterateSplit(Board b, int d) {
+        Move result = null;
+        for (int depth = 1; depth <= d; depth += 1) {
+            Move best = splitRoot(b, depth);
+            if (best == null) {
+                break;
+            }
+            result = best;
+            result.setDepth(depth);
+            report(result);
+            if (_stopped || Math.abs(best.getVal()) > WIN_BOUND) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Return the best move for the player to move on B and its value,
+     *  found by a split search to depth D, or null if the search is
+     *  stopped first.  Among root moves of equal value, the first in
+     *  search order is chosen, as in a sequential search. */
+    private Move splitRoot(Board b, int d) {
+        Searcher main = _searchers[0];
+        main.prepare(b);
+        main._rootDepth = d;
+        long[] keys = new long[Symmetry.COUNT];
+        int symmetry = cacheSymmetry(b, keys);
+        long key = keys[symmetry];
+        long entry = _table.probe(key);
+        int count = main.generateMoves(
+            b, 0, Symmetry.unapply(symmetry, TranspositionTable.move(entry),
+                                   b.size()));
+        int[] moves = new int[count];
+        for (int k = 0; k < count; k += 1) {
+            moves[k] = main.nextMove(0, k, count);
+        }
+
+        Color p = b.whoseMove();
+        int[] values = new int[count];
+        b.addSpot(p, moves[0]);
+        values[0] = -main.minmax(b, d - 1, -INFINITY, INFINITY, 1);
+        b.undo();
+        if (_stopped && d > 1) {
+            return null;
+        }
+
+        if (count > 1) {
+            ForkJoinPool pool = _forkJoin;
+            if (pool == null
+                || pool.getParallelism() != _searchers.length) {
+                if (pool != null) {
+                    pool.shutdown();
                 }
+                pool = _forkJoin = new ForkJoinPool(_searchers.length);
+            }
+            Move bound = new Move(0);
+            bound.setVal(values[0]);
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int k = 1; k < count; k += 1) {
+                int index = k;
+                tasks.add(ForkJoinTask.adapt(
+                    () -> searchRootMove(b, moves, index, d, values, bound)));
+            }
+            pool.invoke(ForkJoinTask.adapt(
+                () -> ForkJoinTask.invokeAll(tasks)));
+            if (_stopped && d > 1) {
+                return null;
+            }
+        }
+        int first = 0;
+        for (int k = 1; k < count; k += 1) {
+            if (values[k] > values[first]) {
+                first = k;
+            }
+        }
+        Move best = new Move(moves[first]);
+        best.setVal(values[first]);
+        _table.store(key, d, TranspositionTable.EXACT,
+                     toTable(best.getVal(), 0),
+                     Symmetry.apply(symmetry, best.getMove(), b.size()));
+        return best;
+    }
+
+    /** Search root move MOVES[K] on a private copy of B to depth D as part
+     *  of a split search.  BOUND holds the best value found so far and,
+     *  as its move, the lowest index in MOVES of a move found to have
+     *  it.  Set VALUES[K] to the value of MOVES[K] if that is greater
+     *  than BOUND's, or equal to it and K is lower, and otherwise to an
+     *  upper bound no greater than BOUND's; then update BOUND.  The first
+     *  of the greatest VALUES is thus the move a sequential search
+     *  would choose. */
+    private void searchRootMove(Board b, int[] moves, int k, int d,
+                                int[] values, Move bound) {
+        Searcher searcher = _splitSearchers.poll();
+        if (searcher == null) {
+            searcher = new Searcher(0);
+        }
+        searcher.setBoard(b);
+        Board board = searcher.board();
+        searcher.prepare(board);
+        searcher._rootDepth = d;
+        int lower;
+        synchronized (bound) {
+            lower = bound.getVal() - (k < bound.getMove() ? 1 : 0);
+        }
+        board.addSpot(board.whoseMove(), moves[k]);
+        int value = -searcher.minmax(board, d - 1, -INFINITY, -lower, 1);
+        _splitSearchers.add(searcher);
+        if (_stopped && d > 1) {
+            return;
+        }
+        values[k] = value;
+        synchronized (bound) {
+            if (value > bound.getVal()
+                || value == bound.getVal() && k < bound.getMove()) {
+                bound.setMove(k);
+                bound.setVal(value);
             }
         }
-        return bestSoFar;
     }
 
-    /** Returns heuristic value of board B for player P.
-     *  Higher is better for P. */
-    private int staticEval(Color p, Board b) {
-        int color = 0;
-        int opp = 0;
+    /** Returns the form in which to store VALUE, found PLY moves from the
+     *  root, in the transposition table.  Winning values count moves to
+     *  the win from the root; in the table they count from the position
+     *  stored. */
+    private static int toTable(int value, int ply) {
+        if (value > WIN_BOUND) {
+            return value + ply;
+        } else if (value < -WIN_BOUND) {
+            return value - ply;
+        }
+        return value;
+    }
+
+    /** Returns the value stored in the transposition table as VALUE for a
+     *  position PLY moves from the root (the inverse of toTable). */
+    private static int fromTable(int value, int ply) {
+        if (value > WIN_BOUND) {
+            return value - ply;
+        } else if (value < -WIN_BOUND) {
+            return value + ply;
+        }
+        return value;
+    }
+
+    /** Returns the symmetry (see Symmetry) under whose image the position
+     *  on B is held in the transposition table, having set KEYS[g] to the
+     *  key of its image under each symmetry #g needed, including that
+     *  one.  Only positions with at most CANONICAL_SQUARES occupied
+     *  squares, where images are common and their keys cheap to compute,
+     *  are held under their canonical keys; others are held as they
+     *  stand. */
+    private static int cacheSymmetry(Board b, long[] keys) {
+        int N = b.size();
+        if (N * N - b.numOfColor(Color.WHITE) > CANONICAL_SQUARES) {
+            keys[Symmetry.IDENTITY] = b.key();
+            return Symmetry.IDENTITY;
+        }
+        b.symmetricKeys(keys);
+        return Symmetry.least(keys);
+    }
+
+    /** Returns heuristic value of board B for player P, PLY moves from
+     *  the root of a search.  Higher is better for P.  Won positions are
+     *  worth more the sooner they are reached.  Otherwise, the value
+     *  counts squares owned and critical squares, and threats (critical
+     *  squares next to enemy squares) of P, who can carry them out now,
+     *  more heavily than those of P's opponent, who must wait a move. */
+    private int staticEval(Color p, Board b, int ply) {
         if (b.won()) {
-            return (b.squares[0].getColor() == p ? Integer.MAX_VALUE
-                    : Integer.MIN_VALUE);
+            return (b.color(0) == p ? WIN_VALUE - ply : ply - WIN_VALUE);
+        }
+        Color opp = p.opposite();
+        return SQUARE_WEIGHT * (b.numOfColor(p) - b.numOfColor(opp))
+            + CRITICAL_WEIGHT * (b.numCritical(p) - b.numCritical(opp))
+            + THREAT_WEIGHT * b.numThreats(p)
+            - OPPONENT_THREAT_WEIGHT * b.numThreats(opp);
+    }
+
+    /** The state of one thread's search: its board (for helpers), its
+     *  move lists and its move-ordering heuristics. */
+    private class Searcher {
+
+        /** Searcher number ID; 0 is the main search. */
+        Searcher(int id) {
+            _id = id;
         }
-        for (Board.Square square : b.squares) {
-            if (square.getColor() == p) {
-                color++;
+
+        /** Returns my private board (used by helper searches). */
+        Board board() {
+            return _own;
+        }
+
+        /** Set my private board to a copy of B. */
+        void setBoard(Board b) {
+            _own = Board.mutableCopy(_own, b);
+        }
+
+        /** Return the best move for the player to move on B, found by
+         *  searching to depths 1, 2, ... D in turn until stopped, as
+         *  described for findMove.  Helpers start at depth 1 or 2
+         *  (alternately) so that they do not all keep pace with the main
+         *  search, and may be stopped during any iteration. */
+        Move iterate(Board b, int d) {
+            prepare(b);
+            Move result = null;
+            for (_rootDepth = 1 + (_id & 1); _rootDepth <= d;
+                 _rootDepth += 1) {
+                int value = minmax(b, _rootDepth, -INFINITY, INFINITY, 0);
+                if (_stopped && abortable()) {
+                    break;
+                }
+                result = new Move(_bestMove);
+                result.setVal(value);
+                result.setDepth(_rootDepth);
+                if (_id == 0) {
+                    report(result);
+                }
+                if (_stopped || Math.abs(value) > WIN_BOUND) {
+                    break;
+                }
             }
+            return result;
         }
-        for (Board.Square square : b.squares) {
-            if (square.getColor() == p) {
-                opp++;
+
+        /** Returns true iff the current iteration may be abandoned when
+         *  the search is stopped. */
+        private boolean abortable() {
+            return _id > 0 || _rootDepth > 1;
+        }
+
+        /** Return the minmax value of board B (which must be mutable)
+         *  for the player to move, searching to a depth of D (where D ==
+         *  0 denotes evaluating just the current position), given that
+         *  only values strictly between ALPHA and BETA matter.  The
+         *  result is exact if within those bounds; otherwise it is a
+         *  bound on the true value on the same side.  PLY is the number
+         *  of moves made since the root of the search; when it is 0, set
+         *  _bestMove to a highest-scoring move.  Results are cached in
+         *  and reused from _table.  The contents of B are invariant over
+         *  this call. */
+        private int minmax(Board b, int d, int alpha, int beta,
+                           int ply) {
+            _nodes += 1;
+            if (abortable()
+                && (_stopped || (_nodes & CHECK_INTERVAL) == 0
+                    && System.nanoTime() > _deadline)) {
+                _stopped = true;
+                return 0;
+            }
+            Color p = b.whoseMove();
+            if (b.won() || d == 0) {
+                return staticEval(p, b, ply);
+            }
+            if (_tablebase != null && ply > 0) {
+                int code = _tablebase.probe(b);
+                if (code != 0) {
+                    return Tablebase.value(code, ply);
+                }
+            }
+            int symmetry = cacheSymmetry(b, _keys);
+            long key = _keys[symmetry];
+            long entry = _table.probe(key);
+            if (SearchStats.ENABLED) {
+                _stats.noteProbe(entry != TranspositionTable.MISS);
+            }
+            int hashMove = -1;
+            if (entry != TranspositionTable.MISS) {
+                hashMove = Symmetry.unapply(symmetry,
+                                            TranspositionTable.move(entry),
+                                            b.size());
+                int depth = TranspositionTable.depth(entry);
+                if (ply > 0 && (depth == d || depth > d && !_split)) {
+                    int value =
+                        fromTable(TranspositionTable.score(entry), ply);
+                    switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return value;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, value);
+                        break;
+                    default:
+                        beta = Math.min(beta, value);
+                        break;
+                    }
+                    if (alpha >= beta) {
+                        return value;
+                    }
+                }
+            }
+
+            int alpha0 = alpha;
+            int count = generateMoves(b, ply, hashMove);
+            if (SearchStats.ENABLED) {
+                _stats.noteExpanded();
+            }
+            int bestSoFar = -1, bestValue = -INFINITY;
+            for (int k = 0; k < count; k += 1) {
+                int move = nextMove(ply, k, count);
+                long jumps = SearchStats.ENABLED ? b.jumps() : 0;
+                b.addSpot(p, move);
+                if (SearchStats.ENABLED) {
+                    _stats.noteChild(b.jumps() - jumps);
+                }
+                int value = -minmax(b, d - 1, -beta, -alpha, ply + 1);
+                b.undo();
+                if (_stopped && abortable()) {
+                    return 0;
+                }
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestSoFar = move;
+                    if (value > alpha) {
+                        alpha = value;
+                        if (alpha >= beta) {
+                            if (SearchStats.ENABLED) {
+                                _stats.noteCutoff(k == 0);
+                            }
+                            recordCutoff(move, d, ply);
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int bound =
+                bestValue <= alpha0 ? TranspositionTable.UPPER
+                : bestValue >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+            _table.store(key, d, bound, toTable(bestValue, ply),
+                         Symmetry.apply(symmetry, bestSoFar, b.size()));
+            if (ply == 0) {
+                _bestMove = bestSoFar;
+            }
+            return bestValue;
+        }
+
+        /** Fill _moveList[PLY] with the legal moves for the player to
+         *  move on B and _moveScore[PLY] with their ordering priorities,
+         *  and return their number.  At the root (PLY 0), moves leading
+         *  to images of the positions after others are left out (see
+         *  Symmetry.distinctMoves).  HASHMOVE is the best move recorded
+         *  for B in the transposition table, or -1; at the root it stands
+         *  for all the moves whose positions are images of its own. */
+        private int generateMoves(Board b, int ply, int hashMove) {
+            Color player = b.whoseMove(), opp = player.opposite();
+            int[] moves = _moveList[ply], scores = _moveScore[ply];
+            int[] killers = _killers[ply];
+            int count = b.legalMoves(player, moves);
+            if (ply == 0) {
+                int N = b.size(), symmetries = Symmetry.symmetries(b);
+                count = Symmetry.distinctMoves(moves, count, N, symmetries);
+                hashMove = Symmetry.representative(hashMove, N, symmetries);
+            }
+            for (int i = 0; i < count; i += 1) {
+                int n = moves[i];
+                int score;
+                if (n == hashMove) {
+                    score = HASH_MOVE_SCORE;
+                } else if (b.critical(n)) {
+                    score = CASCADE_SCORE
+                        + CAPTURE_SCORE * b.neighborsOfColor(n, opp);
+                } else if (n == killers[0] || n == killers[1]) {
+                    score = KILLER_SCORE;
+                } else {
+                    score = _history[n];
+                }
+                scores[i] = score;
+            }
+            return count;
+        }
+
+        /** Return the K-th move to try at PLY, given that there are
+         *  COUNT moves in _moveList[PLY] and that the first K are already
+         *  in order.  Selects the remaining move with the highest
+         *  priority, moving it to position K. */
+        private int nextMove(int ply, int k, int count) {
+            int[] moves = _moveList[ply], scores = _moveScore[ply];
+            int best = k;
+            for (int i = k + 1; i < count; i += 1) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            int move = moves[best], score = scores[best];
+            moves[best] = moves[k];
+            scores[best] = scores[k];
+            moves[k] = move;
+            scores[k] = score;
+            return move;
+        }
+
+        /** Record that MOVE caused a cutoff in a search to depth D at
+         *  PLY. */
+        private void recordCutoff(int move, int d, int ply) {
+            int[] killers = _killers[ply];
+            if (killers[0] != move) {
+                killers[1] = killers[0];
+                killers[0] = move;
+            }
+            _history[move] += d * d;
+            if (_history[move] >= KILLER_SCORE) {
+                for (int n = 0; n < _history.length; n += 1) {
+                    _history[n] >>= 1;
+                }
+            }
+        }
+
+        /** Clear my move-ordering statistics. */
+        void reset() {
+            if (_history != null) {
+                Arrays.fill(_history, 0);
+                for (int[] killers : _killers) {
+                    killers[0] = killers[1] = -1;
+                }
+            }
+        }
+
+        /** Make sure the move-ordering tables fit the size of B. */
+        private void prepare(Board b) {
+            int cells = b.size() * b.size();
+            if (_history == null || _history.length != cells) {
+                _history = new int[cells];
+                _moveList = new int[MAX_PLY + 1][cells];
+                _moveScore = new int[MAX_PLY + 1][cells];
+                _killers = new int[MAX_PLY + 1][2];
+                for (int[] killers : _killers) {
+                    killers[0] = killers[1] = -1;
+                }
             }
         }
-        return color - opp;
+
+        /** My searcher number. */
+        private final int _id;
+        /** My private board, if I am a helper. */
+        private Board _own;
+        /** The best move found by the last call to minmax from the
+         *  root. */
+        private int _bestMove;
+        /** Depth of the current iteration of the search. */
+        private int _rootDepth;
+        /** Number of positions visited (used to pace deadline
+         *  checks). */
+        private long _nodes;
+        /** Counts gathered by my searches if SearchStats.ENABLED. */
+        private final SearchStats _stats = new SearchStats();
+        /** _moveList[k] holds the moves being considered at ply k. */
+        private int[][] _moveList;
+        /** _moveScore[k][i] is the ordering priority of
+         *  _moveList[k][i]. */
+        private int[][] _moveScore;
+        /** _killers[k] holds the last two moves that caused cutoffs at
+         *  ply k. */
+        private int[][] _killers;
+        /** _history[n] accumulates the depths of searches in which a
+         *  move to square #n caused a cutoff. */
+        private int[] _history;
+        /** Keys of the images of the position being searched (see
+         *  cacheSymmetry). */
+        private final long[] _keys = new long[Symmetry.COUNT];
     }
 
-    MutableBoard _board;
+    /** Value of a position won by the player to move. */
+    static final int WIN_VALUE = 1 << 24;
+    /** Values beyond this magnitude indicate won or lost positions. */
+    private static final int WIN_BOUND = WIN_VALUE >> 1;
+    /** A value greater than that of any position. */
+    private static final int INFINITY = WIN_VALUE + 1;
+    /** The deadline is checked every CHECK_INTERVAL + 1 nodes. */
+    private static final int CHECK_INTERVAL = (1 << 10) - 1;
+    /** Deepest search supported. */
+    static final int MAX_PLY = TranspositionTable.MAX_DEPTH;
+    /** Depth of the search guessing the reply to ponder on when the
+     *  transposition table has none. */
+    private static final int GUESS_DEPTH = 2;
+    /** Seconds after which idle helper threads exit. */
+    private static final long HELPER_IDLE_SECONDS = 60;
+    /** Largest number of occupied squares of a position held in the
+     *  transposition table under its canonical key. */
+    private static final int CANONICAL_SQUARES = 16;
+
+    /** Weight in static values of each square owned. */
+    private static final int SQUARE_WEIGHT = 2;
+    /** Weight in static values of each critical square owned. */
+    private static final int CRITICAL_WEIGHT = 1;
+    /** Weight in static values of each threat of the player to move. */
+    private static final int THREAT_WEIGHT = 4;
+    /** Weight in static values of each threat of the other player. */
+    private static final int OPPONENT_THREAT_WEIGHT = 1;
+
+    /** Ordering priority of the transposition table's best move. */
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    /** Ordering priority of a move that starts a cascade. */
+    private static final int CASCADE_SCORE = 1 << 28;
+    /** Additional priority of a cascading move for each adjacent enemy
+     *  square. */
+    private static final int CAPTURE_SCORE = 1 << 20;
+    /** Ordering priority of a killer move; history priorities stay
+     *  below it. */
+    private static final int KILLER_SCORE = 1 << 18;
+
+    /** The board on which I search. */
+    private Board _board;
+    /** Tablebase for the size of the boards searched (null if none). */
+    private volatile Tablebase _tablebase;
+    /** Search results saved across searches and shared among my
+     *  searchers (null until needed; see table()). */
+    private TranspositionTable _table;
+    /** My searchers: the main search first, then the helpers. */
+    private Searcher[] _searchers;
+    /** Threads running helper searches (null until needed). */
+    private ThreadPoolExecutor _helpers;
+    /** True iff searching in split mode. */
+    private volatile boolean _split;
+    /** Pool running the tasks of a split search (null until needed). */
+    private ForkJoinPool _forkJoin;
+    /** Searchers available to the tasks of a split search. */
+    private final ConcurrentLinkedQueue<Searcher> _splitSearchers =
+        new ConcurrentLinkedQueue<>();
+    /** Value of System.nanoTime() at which to stop searching. */
+    private volatile long _deadline;
+    /** True iff the current search has been told to stop. */
+    private volatile boolean _stopped;
+    /** Statistics of my last search. */
+    private final SearchStats _stats = new SearchStats();
+    /** Receiver of the results of completed iterations (null if
+     *  none). */
+    private volatile Consumer<Move> _progress;
+
+    /** Thread running pondering searches (null until needed). */
+    private ThreadPoolExecutor _ponderer;
+    /** The pondering search in progress (null if none). */
+    private Future<Move> _ponder;
+    /** Private board on which I ponder. */
+    private Board _ponderBoard;
+    /** True iff the pondering search has been told to stop. */
+    private boolean _ponderCancelled;
+    /** Key of the position on which I last pondered. */
+    private volatile long _ponderKey;
+    /** Value of nodes() when the last pondering search started. */
+    private volatile long _ponderNodes;
+    /** Milliseconds taken by the last pondering search. */
+    private volatile long _ponderMillis;
 
-    /** A nested class containing information for a Move to be
-     *  potentially added to the current game */
-    class Move {
+    /** A move together with its value to the player making it and the
+     *  depth of the search that found it. */
+    static class Move {
         int _move;
         int _value;
-        
+        int _depth;
+
         Move(int move) {
             _move = move;
         }
@@ -96,7 +958,11 @@ class AI extends Player {
         int getMove() {
             return _move;
         }
+        void setDepth(int depth) {
+            _depth = depth;
+        }
+        int getDepth() {
+            return _depth;
+        }
     }
 }
-
-
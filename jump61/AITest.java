@@ -0,0 +1,190 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of the searching players.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class AITest extends TestCase {
+
+    @Test
+    public void testTimedSearch() {
+        final long budget = 200;
+        Random random = new Random(7);
+        MutableBoard B = new MutableBoard(8);
+        for (int k = 0; k < 20; k += 1) {
+            Color player = B.whoseMove();
+            int n;
+            do {
+                n = random.nextInt(64);
+            } while (!B.isLegal(player, n));
+            B.addSpot(player, n);
+        }
+        String before = B.toString();
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        AI ai = new AI(game, RED);
+        long start = System.currentTimeMillis();
+        AI.Move best = ai.findMove(B, AI.MAX_PLY, budget);
+        long millis = System.currentTimeMillis() - start;
+        assertEquals("board changed", before, B.toString());
+        assertTrue("illegal move", B.isLegal(B.whoseMove(), best.getMove()));
+        assertTrue("no complete iteration", best.getDepth() >= 1);
+        assertTrue("budget ignored", best.getDepth() < AI.MAX_PLY);
+        assertTrue("budget overrun: " + millis, millis < 10 * budget);
+    }
+
+    @Test
+    public void testParallelSearch() {
+        MutableBoard B = new MutableBoard(3);
+        B.set(1, 2, 1, BLUE);
+        B.set(1, 3, 2, BLUE);
+        B.set(2, 1, 3, BLUE);
+        B.set(2, 2, 1, RED);
+        B.set(2, 3, 2, RED);
+        B.set(3, 1, 2, RED);
+        B.set(3, 2, 3, RED);
+        B.set(3, 3, 1, RED);
+        B.setMoves(15);
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        for (int threads : new int[] { 1, 2, 4 }) {
+            AI ai = new AI(game, BLUE);
+            ai.setThreads(threads);
+            AI.Move best = ai.findMove(B, 6);
+            assertEquals("forced win missed", AI.WIN_VALUE - 3,
+                         best.getVal());
+            assertEquals("wrong winning move", B.sqNum(2, 1),
+                         best.getMove());
+        }
+    }
+
+    @Test
+    public void testSplitSearch() {
+        Random random = new Random(9);
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        for (int N = 4; N <= 6; N += 1) {
+            MutableBoard B = new MutableBoard(N);
+            for (int k = 0; k < 10; k += 1) {
+                Color player = B.whoseMove();
+                int n;
+                do {
+                    n = random.nextInt(N * N);
+                } while (!B.isLegal(player, n));
+                B.addSpot(player, n);
+                if (B.won()) {
+                    B.undo();
+                    break;
+                }
+            }
+            String before = B.toString();
+            AI.Move sequential = new AI(game, RED).findMove(B, 5);
+            for (int threads : new int[] { 1, 2, 4 }) {
+                AI ai = new AI(game, RED);
+                ai.setThreads(threads);
+                ai.setSplit(true);
+                AI.Move best = ai.findMove(B, 5);
+                assertEquals("board changed", before, B.toString());
+                assertEquals("split move differs", sequential.getMove(),
+                             best.getMove());
+                assertEquals("split value differs", sequential.getVal(),
+                             best.getVal());
+            }
+        }
+    }
+
+    @Test
+    public void testSplitGame() {
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        game.executeCommand("size 4");
+        game.executeCommand("threads 4");
+        game.executeCommand("parallel split");
+        Color winner = game.playAutomated("minmax", "minmax");
+        assertTrue("game not over", game.getBoard().won());
+        assertEquals("wrong winner", game.getBoard().color(0), winner);
+    }
+
+    @Test
+    public void testMonteCarlo() {
+        Random random = new Random(10);
+        MutableBoard B = new MutableBoard(5);
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        MonteCarloAI ai = new MonteCarloAI(game, RED);
+        for (int k = 0; k < 12 && !B.won(); k += 1) {
+            String before = B.toString();
+            Color player = B.whoseMove();
+            int move = ai.findMove(B, 0, 200, 1 + k % 3);
+            assertEquals("board changed", before, B.toString());
+            assertTrue("illegal move", B.isLegal(player, move));
+            B.addSpot(player, move);
+            if (!B.won()) {
+                int n;
+                do {
+                    n = random.nextInt(25);
+                } while (!B.isLegal(B.whoseMove(), n));
+                B.addSpot(B.whoseMove(), n);
+            }
+        }
+        B = new MutableBoard(5);
+        B.set(1, 1, 1, BLUE);
+        B.setMoves(2);
+        ai = new MonteCarloAI(game, RED);
+        assertEquals("no move without playouts", 1, ai.findMove(B, 0, 0, 1));
+    }
+
+    @Test
+    public void testPonder() {
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        game.executeCommand("size 4");
+        game.executeCommand("ponder on");
+        Color winner = game.playAutomated("minmax", "minmax");
+        assertTrue("game not over", game.getBoard().won());
+        assertEquals("wrong winner", game.getBoard().color(0), winner);
+    }
+
+    @Test
+    public void testSearchStats() {
+        SearchStats stats = new SearchStats(), other = new SearchStats();
+        other.noteExpanded();
+        other.noteChild(0);
+        other.noteChild(3);
+        other.noteCutoff(true);
+        stats.add(other);
+        stats.setTotals(6, 5000, 250);
+        assertEquals("wrong speed", 20000, stats.nodesPerSecond());
+        String summary = stats.summary();
+        assertTrue("wrong totals", summary.startsWith(
+            "depth 6 nodes 5000 time 250 nps 20000"));
+        assertEquals("wrong details", SearchStats.ENABLED,
+                     summary.contains("branching 2.00 cutoffs 100.0%"));
+        Board B = new MutableBoard(2);
+        for (int k = 0; k < 2; k += 1) {
+            B.addSpot(RED, 0);
+            B.addSpot(BLUE, 3);
+        }
+        B.addSpot(RED, 0);
+        assertEquals("wrong jumps", SearchStats.ENABLED ? 1 : 0, B.jumps());
+        stats.clear();
+        assertTrue("not cleared", stats.summary().startsWith(
+            "depth 0 nodes 0"));
+    }
+
+}
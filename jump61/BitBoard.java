@@ -0,0 +1,535 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Color.*;
+
+/** A Jump61 board of at most MAX_SIZE x MAX_SIZE squares, held in
+ *  bitboards: square #N is bit N of each of two masks recording which
+ *  squares are red and which blue, and of four masks (planes) holding
+ *  the binary digits of the squares' spot counts.  Cascades proceed in waves:
+ *  all overfull squares jump at once, with the spots they pass on
+ *  computed by shifting the mask of jumping squares one row or column
+ *  (clipped by edge masks) and adding it to the spot planes.  Color
+ *  counts and win detection take a few bit counts.
+ *
+ *  When a cascade ends without a win, it leaves the same position as
+ *  MutableBoard's one-square-at-a-time order, and a win occurs in exactly
+ *  the same cases.  A won position, however, may hold a different
+ *  distribution of spots, since the cascade stops at a different point.
+ *  Undo information is a copy of the masks for each move.  The Zobrist
+ *  key, identical to MutableBoard's, is brought up to date only when
+ *  asked for, from the squares changed by the moves since it was last
+ *  known, so that boards whose keys are not used do not pay for it.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class BitBoard extends Board {
+
+    /** Largest board size supported. */
+    static final int MAX_SIZE = 8;
+    /** The largest number of spots a square can hold. */
+    static final int MAX_SPOTS = 15;
+
+    /** An N x N board in initial configuration, N <= MAX_SIZE. */
+    BitBoard(int N) {
+        resize(N);
+    }
+
+    /** A board whose initial contents are copied from BOARD0, which must
+     *  satisfy fits(BOARD0). */
+    BitBoard(Board board0) {
+        copy(board0);
+    }
+
+    /** Returns true iff the position on BOARD can be held in a
+     *  BitBoard. */
+    static boolean fits(Board board) {
+        int N = board.size();
+        if (N > MAX_SIZE) {
+            return false;
+        }
+        for (int n = N * N - 1; n >= 0; n -= 1) {
+            if (board.spots(n) > MAX_SPOTS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void clear(int N) {
+        resize(N);
+    }
+
+    @Override
+    void copy(Board board) {
+        if (board instanceof BitBoard) {
+            BitBoard other = (BitBoard) board;
+            if (other._N != _N) {
+                resize(other._N);
+            }
+            _p0 = other._p0;
+            _p1 = other._p1;
+            _p2 = other._p2;
+            _p3 = other._p3;
+            _red = other._red;
+            _blue = other._blue;
+            _key = other._keyed == other._numFrames ? other._key
+                : squaresKey();
+        } else {
+            int N = board.size();
+            resize(N);
+            for (int n = N * N - 1; n >= 0; n -= 1) {
+                put(n, board.spots(n), board.color(n));
+            }
+        }
+        _moves = board.numMoves();
+        clearUndo();
+    }
+
+    @Override
+    int size() {
+        return _N;
+    }
+
+    @Override
+    int spots(int r, int c) {
+        return spots(sqNum(r, c));
+    }
+
+    @Override
+    int spots(int n) {
+        return (int) ((_p0 >>> n & 1) | (_p1 >>> n & 1) << 1
+                      | (_p2 >>> n & 1) << 2 | (_p3 >>> n & 1) << 3);
+    }
+
+    @Override
+    Color color(int r, int c) {
+        return color(sqNum(r, c));
+    }
+
+    @Override
+    Color color(int n) {
+        return (_red >>> n & 1) != 0 ? RED
+            : (_blue >>> n & 1) != 0 ? BLUE : WHITE;
+    }
+
+    @Override
+    boolean isLegal(Color player, int n) {
+        return ((player == RED ? _blue : _red) >>> n & 1) == 0;
+    }
+
+    @Override
+    int legalMoves(Color player, int[] moves) {
+        long legal = _all & ~(player == RED ? _blue : _red);
+        int count;
+        count = 0;
+        while (legal != 0) {
+            moves[count] = Long.numberOfTrailingZeros(legal);
+            count += 1;
+            legal &= legal - 1;
+        }
+        return count;
+    }
+
+    @Override
+    boolean critical(int n) {
+        long p0 = _p0 >>> n, p1 = _p1 >>> n, p2 = _p2 >>> n, p3 = _p3 >>> n;
+        long full = _corners >>> n & ~p0 & p1 & ~p2
+            | _edges >>> n & p0 & p1 & ~p2
+            | _interior >>> n & ~p0 & ~p1 & p2;
+        return (full & ~p3 & 1) != 0;
+    }
+
+    @Override
+    int numCritical(Color player) {
+        return Long.bitCount(critical() & mask(player));
+    }
+
+    @Override
+    int numThreats(Color player) {
+        return Long.bitCount(critical() & mask(player)
+                             & adjacentTo(mask(player.opposite())));
+    }
+
+    @Override
+    int neighborsOfColor(int n, Color color) {
+        return Long.bitCount(adjacentTo(1L << n) & mask(color));
+    }
+
+    @Override
+    int neighbors(int n) {
+        return _topology.capacity()[n];
+    }
+
+    @Override
+    Topology topology() {
+        return _topology;
+    }
+
+    @Override
+    int numMoves() {
+        return _moves;
+    }
+
+    @Override
+    int numOfColor(Color color) {
+        switch (color) {
+        case RED:
+            return Long.bitCount(_red);
+        case BLUE:
+            return Long.bitCount(_blue);
+        default:
+            return _N * _N - Long.bitCount(_red | _blue);
+        }
+    }
+
+    @Override
+    public boolean won() {
+        return _red == _all || _blue == _all;
+    }
+
+    @Override
+    long jumps() {
+        return _jumps;
+    }
+
+    @Override
+    long key() {
+        if (_keyed < _numFrames) {
+            save(_numFrames * FRAME);
+            long key = _undo[_keyed * FRAME + KEY];
+            for (int k = _keyed * FRAME; k < _numFrames * FRAME; k += FRAME) {
+                key ^= keyChange(k, k + FRAME);
+                _undo[k + FRAME + KEY] = key;
+            }
+            _key = key;
+            _keyed = _numFrames;
+        }
+        return (_moves & 1) == 0 ? _key : _key ^ Zobrist.SIDE;
+    }
+
+    @Override
+    void symmetricKeys(long[] keys) {
+        Arrays.fill(keys, 0, Symmetry.COUNT,
+                    (_moves & 1) == 0 ? 0 : Zobrist.SIDE);
+        Symmetry symmetry = Symmetry.forSize(_N);
+        for (long occupied = _red | _blue; occupied != 0;
+             occupied &= occupied - 1) {
+            int n = Long.numberOfTrailingZeros(occupied);
+            symmetry.add(keys, n, MutableBoard.pack(spots(n), color(n)));
+        }
+    }
+
+    @Override
+    void addSpot(Color player, int r, int c) {
+        addSpot(player, sqNum(r, c));
+    }
+
+    @Override
+    void addSpot(Color player, int n) {
+        if ((_numFrames + 2) * FRAME > _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undo.length);
+        }
+        save(_numFrames * FRAME);
+        _numFrames += 1;
+        _moves += 1;
+
+        long bit = 1L << n;
+        long own = (player == RED ? _red : _blue) | bit,
+            other = (player == RED ? _blue : _red);
+        increment(bit);
+        if ((overfull() & bit) != 0) {
+            long all = _all, notFirst = _notFirstColumn,
+                notLast = _notLastColumn;
+            int N = _N;
+            for (long over = bit; over != 0 && own != all;
+                 over = overfull()) {
+                if (SearchStats.ENABLED) {
+                    _jumps += Long.bitCount(over);
+                }
+                long edges = over & _edges;
+                decrement2(over & _corners);
+                decrement2(edges);
+                decrement1(edges);
+                decrement4(over & _interior);
+                long up = over >>> N, down = (over << N) & all,
+                    left = (over & notFirst) >>> 1,
+                    right = (over & notLast) << 1;
+                increment(up);
+                increment(down);
+                increment(left);
+                increment(right);
+                own |= up | down | left | right;
+                other &= ~own;
+            }
+        }
+        if (player == RED) {
+            _red = own;
+            _blue = other;
+        } else {
+            _blue = own;
+            _red = other;
+        }
+    }
+
+    @Override
+    void set(int r, int c, int num, Color player) {
+        set(sqNum(r, c), num, player);
+    }
+
+    @Override
+    void set(int n, int num, Color player) {
+        assert 0 <= num && num <= MAX_SPOTS;
+        key();
+        clearUndo();
+        put(n, num, num == 0 ? WHITE : player);
+    }
+
+    @Override
+    void setMoves(int num) {
+        assert num > 0;
+        key();
+        clearUndo();
+        _moves = num;
+    }
+
+    @Override
+    void undo() {
+        assert _numFrames > 0;
+        _numFrames -= 1;
+        int k = _numFrames * FRAME;
+        long[] undo = _undo;
+        _p0 = undo[k];
+        _p1 = undo[k + 1];
+        _p2 = undo[k + 2];
+        _p3 = undo[k + 3];
+        _red = undo[k + RED_MASK];
+        _blue = undo[k + BLUE_MASK];
+        if (_keyed >= _numFrames) {
+            _keyed = _numFrames;
+            _key = undo[k + KEY];
+        }
+        _moves -= 1;
+    }
+
+    /** Returns the mask of squares holding more spots than they have
+     *  neighbors. */
+    private long overfull() {
+        long p0 = _p0, p1 = _p1, p2 = _p2, p3 = _p3;
+        return _corners & (p3 | p2 | p1 & p0)
+            | _edges & (p3 | p2)
+            | _interior & (p3 | p2 & (p1 | p0));
+    }
+
+    /** Returns the mask of squares holding as many spots as they have
+     *  neighbors. */
+    private long critical() {
+        long p0 = _p0, p1 = _p1, p2 = _p2;
+        return ~_p3 & (_corners & ~p0 & p1 & ~p2
+                       | _edges & p0 & p1 & ~p2
+                       | _interior & ~p0 & ~p1 & p2);
+    }
+
+    /** Returns the mask of squares of color COLOR. */
+    private long mask(Color color) {
+        switch (color) {
+        case RED:
+            return _red;
+        case BLUE:
+            return _blue;
+        default:
+            return _all & ~(_red | _blue);
+        }
+    }
+
+    /** Returns the mask of squares adjacent to some square in MASK. */
+    private long adjacentTo(long mask) {
+        int N = _N;
+        return (mask >>> N | mask << N
+                | (mask & _notFirstColumn) >>> 1
+                | (mask & _notLastColumn) << 1) & _all;
+    }
+
+    /** Add one spot to each square in MASK. */
+    private void increment(long mask) {
+        long carry0 = _p0 & mask;
+        _p0 ^= mask;
+        long carry1 = _p1 & carry0;
+        _p1 ^= carry0;
+        long carry2 = _p2 & carry1;
+        _p2 ^= carry1;
+        _p3 ^= carry2;
+    }
+
+    /** Subtract one spot from each square in MASK, all of which hold at
+     *  least one. */
+    private void decrement1(long mask) {
+        long borrow0 = ~_p0 & mask;
+        _p0 ^= mask;
+        decrement2(borrow0);
+    }
+
+    /** Subtract two spots from each square in MASK, all of which hold at
+     *  least two. */
+    private void decrement2(long mask) {
+        long borrow1 = ~_p1 & mask;
+        _p1 ^= mask;
+        decrement4(borrow1);
+    }
+
+    /** Subtract four spots from each square in MASK, all of which hold
+     *  at least four. */
+    private void decrement4(long mask) {
+        long borrow2 = ~_p2 & mask;
+        _p2 ^= mask;
+        _p3 ^= borrow2;
+    }
+
+    /** Save the current position (except its key) in the undo frame
+     *  at K. */
+    private void save(int k) {
+        long[] undo = _undo;
+        undo[k] = _p0;
+        undo[k + 1] = _p1;
+        undo[k + 2] = _p2;
+        undo[k + 3] = _p3;
+        undo[k + RED_MASK] = _red;
+        undo[k + BLUE_MASK] = _blue;
+        undo[k + KEY] = _key;
+    }
+
+    /** Returns the change in key between the positions saved in the
+     *  undo frames at FROM and TO. */
+    private long keyChange(int from, int to) {
+        long[] undo = _undo;
+        long changed = 0;
+        for (int i = 0; i < KEY; i += 1) {
+            changed |= undo[from + i] ^ undo[to + i];
+        }
+        long change;
+        change = 0;
+        while (changed != 0) {
+            int n = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            change ^= Zobrist.square(n, cell(from, n))
+                ^ Zobrist.square(n, cell(to, n));
+        }
+        return change;
+    }
+
+    /** Returns the packed contents (see MutableBoard.pack) of square #N
+     *  in the position saved in the undo frame at K. */
+    private int cell(int k, int n) {
+        long[] undo = _undo;
+        int spots = (int) ((undo[k] >>> n & 1) | (undo[k + 1] >>> n & 1) << 1
+                           | (undo[k + 2] >>> n & 1) << 2
+                           | (undo[k + 3] >>> n & 1) << 3);
+        int color = (int) ((undo[k + RED_MASK] >>> n & 1) * RED.ordinal()
+                           | (undo[k + BLUE_MASK] >>> n & 1)
+                           * BLUE.ordinal());
+        return spots << MutableBoard.COLOR_BITS | color;
+    }
+
+    /** Returns the Zobrist key of my squares, excluding the player to
+     *  move, computed from the squares themselves. */
+    private long squaresKey() {
+        long key = 0;
+        for (long occupied = _red | _blue; occupied != 0;
+             occupied &= occupied - 1) {
+            int n = Long.numberOfTrailingZeros(occupied);
+            key ^= Zobrist.square(n, MutableBoard.pack(spots(n), color(n)));
+        }
+        return key;
+    }
+
+    /** Discard the undo history (whose current key must be known). */
+    private void clearUndo() {
+        _numFrames = _keyed = 0;
+    }
+
+    /** Set square #N to hold SPOTS spots of color COLOR, keeping the key
+     *  up to date. */
+    private void put(int n, int spots, Color color) {
+        _key ^= Zobrist.square(n, MutableBoard.pack(spots(n), color(n)))
+            ^ Zobrist.square(n, MutableBoard.pack(spots, color));
+        long bit = 1L << n;
+        _p0 = (spots & 1) != 0 ? _p0 | bit : _p0 & ~bit;
+        _p1 = (spots & 2) != 0 ? _p1 | bit : _p1 & ~bit;
+        _p2 = (spots & 4) != 0 ? _p2 | bit : _p2 & ~bit;
+        _p3 = (spots & 8) != 0 ? _p3 | bit : _p3 & ~bit;
+        _red = color == RED ? _red | bit : _red & ~bit;
+        _blue = color == BLUE ? _blue | bit : _blue & ~bit;
+    }
+
+    /** Set me to an empty N x N board with no moves and no undo
+     *  history, computing the edge masks for its size. */
+    private void resize(int N) {
+        assert 2 <= N && N <= MAX_SIZE;
+        if (N != _N) {
+            _N = N;
+            _topology = Topology.forSize(N);
+            _all = N * N == Long.SIZE ? -1L : (1L << N * N) - 1;
+            long firstColumn, lastColumn, top, bottom;
+            firstColumn = 0;
+            for (int r = 0; r < N; r += 1) {
+                firstColumn |= 1L << r * N;
+            }
+            lastColumn = firstColumn << N - 1;
+            top = (1L << N) - 1;
+            bottom = top << N * (N - 1);
+            long border = firstColumn | lastColumn | top | bottom;
+            _corners = (firstColumn | lastColumn) & (top | bottom);
+            _edges = border & ~_corners;
+            _interior = _all & ~border;
+            _notFirstColumn = _all & ~firstColumn;
+            _notLastColumn = _all & ~lastColumn;
+        }
+        _p0 = _p1 = _p2 = _p3 = 0;
+        _red = _blue = _key = 0;
+        _moves = 0;
+        clearUndo();
+    }
+
+    /** Positions in an undo frame of the red and blue masks and the key,
+     *  which follow the four spot planes. */
+    private static final int RED_MASK = 4, BLUE_MASK = 5, KEY = 6;
+    /** Number of longs in an undo frame. */
+    private static final int FRAME = 7;
+
+    /** Size of board (squares along one edge). */
+    private int _N;
+    /** The neighbor structure of an N x N board. */
+    private Topology _topology;
+    /** Mask of all squares. */
+    private long _all;
+    /** Masks of the corner squares (two neighbors), the other edge
+     *  squares (three) and the interior squares (four). */
+    private long _corners, _edges, _interior;
+    /** Masks of the squares not in the first and not in the last
+     *  column. */
+    private long _notFirstColumn, _notLastColumn;
+    /** The spot planes: _pK holds bit K of every square's spot
+     *  count. */
+    private long _p0, _p1, _p2, _p3;
+    /** Masks of the red and of the blue squares. */
+    private long _red, _blue;
+    /** Zobrist key of my squares, excluding the player to move, if
+     *  _keyed == _numFrames. */
+    private long _key;
+    /** The keys of the positions saved in the first _keyed undo frames
+     *  and the next position (the current one, if _keyed == _numFrames)
+     *  are known. */
+    private int _keyed;
+    /** Total combined number of moves by both sides. */
+    private int _moves;
+    /** Undo frames, FRAME longs per undoable move, oldest first, each
+     *  holding the position before the move. */
+    private long[] _undo = new long[16 * FRAME];
+    /** Number of undoable moves. */
+    private int _numFrames;
+    /** Number of times a square has jumped (counted only if
+     *  SearchStats.ENABLED). */
+    private long _jumps;
+
+}
@@ -1,5 +1,6 @@
 package jump61;
 
+import java.util.Arrays;
 import java.util.Formatter;
 
 import static jump61.Color.*;
@@ -23,6 +24,33 @@ abstract class Board {
         unsupported("copy");
     }
 
+    /** Returns a modifiable copy of BOARD0, with no undo history, of the
+     *  fastest kind for its position: a BitBoard if it fits in one, a
+     *  SparseBoard if it is large and mostly empty, and otherwise a
+     *  MutableBoard.  SCRATCH (which may be null) is reused for the copy
+     *  if it is of the right kind. */
+    static Board mutableCopy(Board scratch, Board board0) {
+        if (BitBoard.fits(board0)) {
+            if (scratch instanceof BitBoard) {
+                scratch.copy(board0);
+                return scratch;
+            }
+            return new BitBoard(board0);
+        } else if (SparseBoard.suits(board0)) {
+            if (scratch instanceof SparseBoard) {
+                scratch.copy(board0);
+                return scratch;
+            }
+            return new SparseBoard(board0);
+        } else {
+            if (scratch instanceof MutableBoard) {
+                scratch.copy(board0);
+                return scratch;
+            }
+            return new MutableBoard(board0);
+        }
+    }
+
     /** Return the number of rows and of columns of THIS. */
     abstract int size();
 
@@ -65,7 +93,7 @@ abstract class Board {
 
     /** Return the row number for square #N. */
     final int row(int n) {
-        return (int) Math.floor(n / size()) + 1;
+        return n / size() + 1;
     }
 
     /** Return the column number for square #N. */
@@ -88,7 +116,71 @@ abstract class Board {
     /** Returns true iff it would currently be legal for PLAYER to add a spot
      *  to square #N. */
     boolean isLegal(Color player, int n) {
-        return (squares[n].color == player | squares[n].color == WHITE);
+        return player.playableSquare(color(n));
+    }
+
+    /** Store the squares on which PLAYER may legally add a spot in MOVES,
+     *  in increasing order, and return their number. */
+    int legalMoves(Color player, int[] moves) {
+        int count;
+        count = 0;
+        for (int n = 0; n < size() * size(); n += 1) {
+            if (isLegal(player, n)) {
+                moves[count] = n;
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns true iff square #N holds as many spots as it has
+     *  neighbors, so that adding a spot makes it jump. */
+    boolean critical(int n) {
+        return spots(n) == neighbors(n);
+    }
+
+    /** Returns the number of squares of color PLAYER that are
+     *  critical. */
+    int numCritical(Color player) {
+        int count;
+        count = 0;
+        for (int n = size() * size() - 1; n >= 0; n -= 1) {
+            if (color(n) == player && critical(n)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of threats of PLAYER: critical squares of
+     *  color PLAYER adjacent to a square of the opposite color, from
+     *  which PLAYER can start a cascade that captures. */
+    int numThreats(Color player) {
+        Color opp = player.opposite();
+        int count;
+        count = 0;
+        for (int n = size() * size() - 1; n >= 0; n -= 1) {
+            if (color(n) == player && critical(n)
+                && neighborsOfColor(n, opp) > 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of neighbors of square #N that have color
+     *  COLOR. */
+    int neighborsOfColor(int n, Color color) {
+        Topology topology = topology();
+        int[] adjacent = topology.adjacent(), first = topology.first();
+        int count;
+        count = 0;
+        for (int k = first[n]; k < first[n + 1]; k += 1) {
+            if (color(adjacent[k]) == color) {
+                count += 1;
+            }
+        }
+        return count;
     }
 
     /** Returns true iff PLAYER is allowed to move at this point. */
@@ -154,8 +246,13 @@ abstract class Board {
         for (int row = 1; row <= n; row++) {
             sb.append("    ");
             for (int col = 1; col <= n; col++) {
-                final Square square = squares[sqNum(row, col)];
-                sb.append(square.toString());
+                final int sq = sqNum(row, col);
+                final Color color = color(sq);
+                if (color == WHITE) {
+                    sb.append("--");
+                } else {
+                    sb.append(spots(sq)).append(color == RED ? 'r' : 'b');
+                }
 
                 final boolean lastCol = (col == (n));
                 sb.append(lastCol ? "\n" : " ");
@@ -165,6 +262,58 @@ abstract class Board {
         return sb.toString();
     }
 
+    /** Returns the Zobrist key of the current position, including the
+     *  player to move (see Zobrist). */
+    long key() {
+        unsupported("key");
+        return 0;
+    }
+
+    /** Set KEYS[g] to the Zobrist key, including the player to move, of
+     *  the image of the current position under symmetry #g (see
+     *  Symmetry), for every g, so that KEYS[Symmetry.IDENTITY] == key().
+     *  The keys are computed afresh from my occupied squares. */
+    void symmetricKeys(long[] keys) {
+        Arrays.fill(keys, 0, Symmetry.COUNT,
+                    (numMoves() & 1) == 0 ? 0 : Zobrist.SIDE);
+        Symmetry symmetry = Symmetry.forSize(size());
+        for (int n = 0; n < size() * size(); n += 1) {
+            if (spots(n) > 0) {
+                symmetry.add(keys, n, MutableBoard.pack(spots(n), color(n)));
+            }
+        }
+    }
+
+    /** Returns the symmetry whose image of the current position has the
+     *  least key (the lowest-numbered one if there are several).  It takes
+     *  positions that are images of one another to the same position, so
+     *  moves it maps are in a common orientation. */
+    final int canonicalSymmetry() {
+        long[] keys = new long[Symmetry.COUNT];
+        symmetricKeys(keys);
+        return Symmetry.least(keys);
+    }
+
+    /** Returns the key of the current position's image under
+     *  canonicalSymmetry(), which is the same for all positions that are
+     *  images of one another. */
+    final long canonicalKey() {
+        long[] keys = new long[Symmetry.COUNT];
+        symmetricKeys(keys);
+        return keys[Symmetry.least(keys)];
+    }
+
+    /** Returns the number of times any of my squares has jumped since I
+     *  was created, if SearchStats.ENABLED, or 0 otherwise. */
+    long jumps() {
+        return 0;
+    }
+
+    /** Returns the neighbor structure of my squares. */
+    Topology topology() {
+        return Topology.forSize(size());
+    }
+
     /** Returns the number of neighbors of the square at row R, column C. */
     int neighbors(int r, int c) {
         if ((r == 1 || r == size()) && (c == 1 || c == size())) {
@@ -219,83 +368,19 @@ abstract class Board {
     private static final int NL_LENGTH =
         System.getProperty("line.separator").length();
 
-    /** A board saving the contents of the previous board for purposes
-     *  of undoing moves. Each PREVBOARD may itself have another PREVBOARD. */
-    Board _prevBoard;
-
-    /** An getter that returns this instance of board's previous board. */
-    public Board getPrevBoard() {
-        return _prevBoard;
-    }
-
+    /** Returns true iff every square has the same (non-white) color,
+     *  i.e. the game is over. */
     public boolean won() {
-        Color first = squares[0].getColor();
-        if (first == WHITE) {return false;}
-        for (Square square : squares) {
-            if (square.getColor() != first) {
+        Color first = color(0);
+        if (first == WHITE) {
+            return false;
+        }
+        for (int n = size() * size() - 1; n > 0; n -= 1) {
+            if (color(n) != first) {
                 return false;
             }
         }
         return true;
     }
-    
-    Square[] squares;
-
-    /** A nested class representing an instance of a board square.
-     *  Each square has a COLOR, which is White by default
-     *  and a number of DOTS, which is 1 by default. */
-    class Square {
-        private Color color = WHITE;
-        private int spots = 0;
-
-        @Override
-        /** Returns a string representation of THIS. */
-        public String toString() {
-            if (color == WHITE) {
-                return "--";
-            }
-            final String cl = (color == RED ? "r" : "b");
-            return String.format("%d%s", spots, cl);
-        }
 
-        /** Returns the color of the THIS. */
-        public Color getColor() {
-            return color;
-        }
-
-        /** Sets the color of THIS to COLOR. */
-        public void setColor(Color color) {
-            this.color = color;
-        }
-
-        /** Returns the number of spots on THIS. */
-        public int getSpots() {
-            return spots;
-        }
-
-        /** Sets THIS's number of spots to NUM. */
-        public void setSpots(int num) {
-            spots = num;
-        }
-
-        /** Adds one spot to THIS. */
-        public void addSpot() {
-            spots += 1;
-        }
-
-        /** Removes one spot from THIS. */
-        public void remSpot() {
-            spots -= 1;
-        }
-
-        /** Returns a new Square with the same attributes as THIS. */
-        public Square clone() {
-            Square result = new Square();
-            result.setSpots(this.spots);
-            result.setColor(this.color);
-            return result;
-        }
-    }
-    
-    
 }
@@ -2,6 +2,12 @@ package jump61;
 
 import static jump61.Color.*;
 
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import junit.framework.TestCase;
@@ -58,6 +64,52 @@ public class BoardTest extends TestCase {
         checkBoard("#1U", B, 1, 1, 1, RED);
     }
     
+    @Test
+    public void testCascadeUndo() {
+        final int N = 16;
+        MutableBoard B = new MutableBoard(N);
+        byte[] capacity = Topology.forSize(N).capacity();
+        for (int n = 0; n < N * N / 2; n += 1) {
+            B.set(n, capacity[n], RED);
+        }
+        B.set(N * N - 1, 1, BLUE);
+        B.setMoves(1);
+        String start = B.toString();
+        long key = B.key();
+        B.addSpot(BLUE, N * N - 1);
+        String before = B.toString();
+        B.addSpot(RED, N + 1);
+        assertFalse("game won", B.won());
+        assertTrue("no cascade", B.numOfColor(RED) > N * N / 2);
+        B.undo();
+        assertEquals("wrong position", before, B.toString());
+        assertEquals("wrong move count", 2, B.numMoves());
+        assertEquals("wrong player", RED, B.whoseMove());
+        B.undo();
+        assertEquals("wrong position", start, B.toString());
+        assertEquals("wrong key", key, B.key());
+        assertEquals("wrong move count", 1, B.numMoves());
+        assertEquals("wrong player", BLUE, B.whoseMove());
+
+        for (int n = N * N / 2; n < N * N - 1; n += 1) {
+            B.set(n, capacity[n], RED);
+        }
+        B.set(N * N - 1, capacity[N * N - 1], BLUE);
+        B.setMoves(2);
+        before = B.toString();
+        key = B.key();
+        B.addSpot(RED, 0);
+        assertTrue("cascade did not win", B.won());
+        assertEquals("wrong winner", RED, B.getWinner());
+        B.undo();
+        assertEquals("wrong position", before, B.toString());
+        assertEquals("wrong key", key, B.key());
+        assertEquals("wrong move count", 2, B.numMoves());
+        assertEquals("wrong player", RED, B.whoseMove());
+        assertEquals("wrong count", 1, B.numOfColor(BLUE));
+        assertFalse("still won", B.won());
+    }
+
     public void testDump() {
         Board B = new MutableBoard(6);
         B.set(1 ,1, 1, BLUE);
@@ -69,6 +121,333 @@ public class BoardTest extends TestCase {
             "    -- -- -- -- -- --\n    -- -- -- -- -- --\n===\n");
     }
 
+    @Test
+    public void testConstantView() {
+        Board B = new MutableBoard(3);
+        Board C = new ConstantBoard(B);
+        B.addSpot(RED, 2, 2);
+        assertEquals("view not updated", RED, C.color(2, 2));
+        B.clear(2);
+        assertEquals("view not resized", 2, C.size());
+        B.set(1, 1, 1, BLUE);
+        B.set(1, 2, 1, BLUE);
+        B.set(2, 1, 1, BLUE);
+        assertFalse("premature win", C.won());
+        B.set(2, 2, 2, BLUE);
+        assertTrue("win not seen", C.won());
+        assertEquals("wrong count", 4, C.numOfColor(BLUE));
+        assertEquals(B.toString(), C.toString());
+    }
+
+    @Test
+    public void testUndoJournal() {
+        Random random = new Random(2);
+        for (int N = 2; N <= 5; N += 1) {
+            MutableBoard B = new MutableBoard(N);
+            B.set(1, 1, 1, BLUE);
+            B.setMoves(1);
+            ArrayList<String> positions = new ArrayList<>();
+            ArrayList<Long> keys = new ArrayList<>();
+            while (!B.won()) {
+                positions.add(B.toString());
+                keys.add(B.key());
+                Color player = B.whoseMove();
+                int n;
+                do {
+                    n = random.nextInt(N * N);
+                } while (!B.isLegal(player, n));
+                B.addSpot(player, n);
+            }
+            Color winner = B.getWinner();
+            assertEquals("wrong winner count", N * N, B.numOfColor(winner));
+            for (int k = positions.size() - 1; k >= 0; k -= 1) {
+                assertTrue("cannot undo", B.canUndo());
+                B.undo();
+                assertEquals("wrong position", positions.get(k),
+                             B.toString());
+                assertEquals("wrong key", (long) keys.get(k), B.key());
+                assertEquals("wrong move count", k + 1, B.numMoves());
+                assertEquals("wrong player", k % 2 == 0 ? BLUE : RED,
+                             B.whoseMove());
+                assertFalse("still won", B.won());
+            }
+            assertFalse("undid set position", B.canUndo());
+            assertEquals("wrong count", 1, B.numOfColor(BLUE));
+            assertEquals("wrong count", N * N - 1, B.numOfColor(WHITE));
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        Board B = new MutableBoard(2);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 2, 2);
+        B.addSpot(RED, 1, 1);
+        assertEquals("wrong count", 2, B.numOfColor(WHITE));
+        B.addSpot(BLUE, 2, 2);
+        B.addSpot(RED, 1, 1);
+        assertEquals("wrong count", 3, B.numOfColor(RED));
+        assertEquals("wrong count", 1, B.numOfColor(BLUE));
+        assertEquals("wrong count", 0, B.numOfColor(WHITE));
+        assertFalse("premature win", B.won());
+        B.undo();
+        assertEquals("wrong count after undo", 1, B.numOfColor(RED));
+        assertEquals("wrong count after undo", 1, B.numOfColor(BLUE));
+        assertEquals("wrong count after undo", 2, B.numOfColor(WHITE));
+        B.clear(2);
+        assertEquals("wrong count after clear", 4, B.numOfColor(WHITE));
+    }
+
+    @Test
+    public void testCopyView() {
+        Board B = new MutableBoard(3);
+        B.addSpot(RED, 1, 1);
+        B.addSpot(BLUE, 3, 3);
+        Board D = new MutableBoard(4);
+        D.addSpot(RED, 4, 4);
+        D.copy(new ConstantBoard(B));
+        assertEquals("bad length", 3, D.size());
+        assertEquals("wrong count", 1, D.numOfColor(RED));
+        assertEquals("wrong count", 1, D.numOfColor(BLUE));
+        assertEquals("wrong count", 7, D.numOfColor(WHITE));
+        assertEquals(B.toString(), D.toString());
+    }
+
+    @Test
+    public void testBitBoard() {
+        Random random = new Random(61);
+        MutableBoard B = new MutableBoard(5);
+        BitBoard D = new BitBoard(5);
+        while (!B.won()) {
+            assertEquals(B.toString(), D.toString());
+            assertEquals("wrong key in copy", B.key(),
+                         new BitBoard(D).key());
+            assertEquals("wrong key", B.key(), D.key());
+            assertEquals("wrong count", B.numOfColor(RED), D.numOfColor(RED));
+            Color player = B.whoseMove();
+            int n;
+            do {
+                n = random.nextInt(25);
+            } while (!B.isLegal(player, n));
+            B.addSpot(player, n);
+            D.addSpot(player, n);
+            assertEquals("wrong win", B.won(), D.won());
+        }
+        B.undo();
+        D.undo();
+        assertEquals(B.toString(), D.toString());
+        assertEquals("wrong key after undo", B.key(), D.key());
+        assertTrue("different perft",
+                   Arrays.equals(new Perft(1).divide(B, 3),
+                                 new Perft(1).divide(D, 3)));
+    }
+
+    @Test
+    public void testThreats() {
+        Random random = new Random(61);
+        Board[] boards = { new MutableBoard(5), new BitBoard(5) };
+        for (Board B : boards) {
+            Board view = new ConstantBoard(B);
+            while (!B.won()) {
+                Color player = B.whoseMove();
+                int n;
+                do {
+                    n = random.nextInt(25);
+                } while (!B.isLegal(player, n));
+                B.addSpot(player, n);
+                if (random.nextInt(4) == 0) {
+                    B.undo();
+                }
+                for (Color c : new Color[] { RED, BLUE }) {
+                    assertEquals("wrong critical count", view.numCritical(c),
+                                 B.numCritical(c));
+                    assertEquals("wrong threat count", view.numThreats(c),
+                                 B.numThreats(c));
+                }
+            }
+        }
+        Board B = boards[0];
+        B.clear(3);
+        B.set(1, 1, 2, RED);
+        B.set(1, 2, 1, BLUE);
+        B.set(2, 2, 4, BLUE);
+        assertEquals("wrong critical count", 1, B.numCritical(BLUE));
+        assertEquals("wrong red threats", 1, B.numThreats(RED));
+        assertEquals("wrong blue threats", 0, B.numThreats(BLUE));
+        assertEquals("wrong neighbor count", 1, B.neighborsOfColor(1, RED));
+    }
+
+    @Test
+    public void testWaveCascade() {
+        final int N = 256;
+        MutableBoard B = new MutableBoard(N);
+        Topology topology = Topology.forSize(N);
+        byte[] capacity = topology.capacity();
+        int[] spots = new int[N * N];
+        for (int n = 0; n < N * N / 2; n += 1) {
+            B.set(n, capacity[n], RED);
+            spots[n] = capacity[n];
+        }
+        long key = B.key();
+        int critical = B.numCritical(RED);
+        B.addSpot(RED, N + 1);
+        spots[N + 1] += 1;
+        ArrayList<Integer> pending = new ArrayList<>();
+        pending.add(N + 1);
+        while (!pending.isEmpty()) {
+            int n = pending.remove(pending.size() - 1);
+            if (spots[n] <= capacity[n]) {
+                continue;
+            }
+            spots[n] -= capacity[n];
+            int[] first = topology.first();
+            for (int k = first[n]; k < first[n + 1]; k += 1) {
+                int m = topology.adjacent()[k];
+                spots[m] += 1;
+                pending.add(m);
+            }
+            pending.add(n);
+        }
+        assertFalse("game won", B.won());
+        for (int n = 0; n < N * N; n += 1) {
+            assertEquals("wrong spots at " + n, spots[n], B.spots(n));
+            assertEquals("wrong color at " + n, spots[n] == 0 ? WHITE : RED,
+                         B.color(n));
+        }
+        B.undo();
+        assertEquals("undo changed key", key, B.key());
+        assertEquals("undo changed index", critical, B.numCritical(RED));
+        assertEquals("undo changed squares", N * N / 2, B.numOfColor(RED));
+    }
+
+    @Test
+    public void testSparseBoard() {
+        final int N = SparseBoard.MIN_SIZE;
+        Random random = new Random(61);
+        MutableBoard B = new MutableBoard(N);
+        SparseBoard S = new SparseBoard(N);
+        assertTrue("empty board not sparse", SparseBoard.suits(B));
+        assertTrue("wrong copy kind",
+                   Board.mutableCopy(null, B) instanceof SparseBoard);
+        for (int k = 0; k < 4 * N; k += 1) {
+            Color player = B.whoseMove();
+            int n = random.nextInt(N / 4) * N + random.nextInt(N / 4);
+            if (B.isLegal(player, n)) {
+                B.addSpot(player, n);
+                S.addSpot(player, n);
+            }
+        }
+        assertEquals(B.toString(), S.toString());
+        assertEquals("wrong key", B.key(), S.key());
+        for (Color player : new Color[] { RED, BLUE }) {
+            assertEquals("wrong count", B.numOfColor(player),
+                         S.numOfColor(player));
+            assertEquals("wrong critical", B.numCritical(player),
+                         S.numCritical(player));
+            assertEquals("wrong threats", B.numThreats(player),
+                         S.numThreats(player));
+            int[] expected = new int[N * N], moves = new int[N * N];
+            int count = B.legalMoves(player, expected);
+            assertEquals("wrong number of moves", count,
+                         S.legalMoves(player, moves));
+            assertTrue("wrong moves", Arrays.equals(expected, moves));
+        }
+        SparseBoard C = new SparseBoard(S);
+        assertEquals("wrong copy", B.toString(), C.toString());
+        while (S.canUndo()) {
+            S.undo();
+        }
+        assertEquals("undo changed copy", B.toString(), C.toString());
+        assertEquals("not undone", new MutableBoard(N).toString(),
+                     S.toString());
+        assertEquals("wrong key after undo", 0, S.key());
+
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere,
+                             nowhere);
+        Board view = game.getBoard();
+        game.executeCommand("size " + N);
+        game.makeMove(B.sqNum(2, 3));
+        assertEquals("view not resized", N, view.size());
+        assertEquals("move not seen", RED, view.color(2, 3));
+        game.executeCommand("size 4");
+        assertEquals("view not resized", 4, view.size());
+        assertEquals("board not cleared", 16, view.numOfColor(WHITE));
+    }
+
+    @Test
+    public void testSymmetry() {
+        final int N = 6;
+        MutableBoard B = new MutableBoard(N);
+        MutableBoard T = new MutableBoard(N);
+        BitBoard F = new BitBoard(N);
+        B.addSpot(RED, 1, 2);
+        B.addSpot(BLUE, 3, 5);
+        B.addSpot(RED, 1, 2);
+        T.addSpot(RED, 2, 1);
+        T.addSpot(BLUE, 5, 3);
+        T.addSpot(RED, 2, 1);
+        F.addSpot(RED, 1, 5);
+        F.addSpot(BLUE, 3, 2);
+        F.addSpot(RED, 1, 5);
+        assertTrue("images share keys", B.key() != T.key());
+        assertEquals("transpose", B.canonicalKey(), T.canonicalKey());
+        assertEquals("reflection", B.canonicalKey(), F.canonicalKey());
+        long[] keys = new long[Symmetry.COUNT];
+        B.symmetricKeys(keys);
+        assertEquals("wrong identity key", B.key(),
+                     keys[Symmetry.IDENTITY]);
+        assertEquals("wrong image key", T.key(),
+                     keys[Symmetry.TRANSPOSE]);
+        Random random = new Random(25);
+        MutableBoard M = new MutableBoard(N);
+        BitBoard D = new BitBoard(N);
+        long[] bitKeys = new long[Symmetry.COUNT];
+        for (int k = 0; !M.won(); k += 1) {
+            M.symmetricKeys(keys);
+            D.symmetricKeys(bitKeys);
+            assertTrue("wrong image keys", Arrays.equals(bitKeys, keys));
+            Color player = M.whoseMove();
+            int n;
+            do {
+                n = random.nextInt(N * N);
+            } while (!M.isLegal(player, n));
+            M.addSpot(player, n);
+            D.addSpot(player, n);
+            if (k % 3 == 2) {
+                M.undo();
+                D.undo();
+                M.symmetricKeys(keys);
+                D.symmetricKeys(bitKeys);
+                assertTrue("wrong image keys after undo",
+                           Arrays.equals(bitKeys, keys));
+                M = new MutableBoard(M);
+                D.copy(M);
+            }
+        }
+        int move = Symmetry.apply(B.canonicalSymmetry(), B.sqNum(1, 2), N);
+        assertEquals("moves not in common orientation", move,
+                     Symmetry.apply(T.canonicalSymmetry(),
+                                    T.sqNum(2, 1), N));
+        for (int g = 0; g < Symmetry.COUNT; g += 1) {
+            for (int n = 0; n < N * N; n += 1) {
+                assertEquals("no round trip", n,
+                             Symmetry.unapply(g, Symmetry.apply(g, n, N),
+                                              N));
+            }
+        }
+        MutableBoard E = new MutableBoard(N);
+        int symmetries = Symmetry.symmetries(E);
+        assertEquals("empty board symmetries",
+                     (1 << Symmetry.COUNT) - 1, symmetries);
+        assertEquals("symmetries of B", 1 << Symmetry.IDENTITY,
+                     Symmetry.symmetries(B));
+        int[] moves = new int[N * N];
+        int count = E.legalMoves(RED, moves);
+        assertEquals("distinct moves", 6,
+                     Symmetry.distinctMoves(moves, count, N, symmetries));
+    }
+
     private void checkBoard(String msg, Board B, Object... contents) {
         for (int k = 0; k < contents.length; k += 4) {
             String M = String.format("%s at %d %d", msg, contents[k],
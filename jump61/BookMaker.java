@@ -0,0 +1,228 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static jump61.Color.*;
+import static jump61.GameException.error;
+
+/** The offline generator of opening books (see OpeningBook).  For each
+ *  board size, the book covers the positions reached from the empty board
+ *  by up to a given number of book moves, each up to rotation and
+ *  reflection.  For each such position, every legal move (but only one
+ *  of the moves that lead to images of one another) is searched to a
+ *  fixed depth, and the best few moves (those whose values are within a
+ *  margin of the best) become the position's book moves, weighted by how
+ *  close they come to the best.
+ *  The positions of each ply are searched in parallel on a fixed pool of
+ *  threads, each with its own single-threaded AI, whose cache is cleared
+ *  before each position so that the book does not depend on the number
+ *  of threads.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class BookMaker {
+
+    /** Generate the book described by the options in ARGS (see
+     *  Usage.txt), returning an exit code: 0 normally, and 1 for
+     *  errors. */
+    static int run(String[] args) {
+        BookMaker maker;
+        try {
+            maker = new BookMaker(args);
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            return 1;
+        }
+        try {
+            maker.generate();
+        } catch (IOException excp) {
+            System.err.printf("cannot write %s: %s%n", maker._bookName,
+                              excp.getMessage());
+            return 1;
+        } catch (InterruptedException excp) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /** A generator configured by the options in ARGS.  Throws
+     *  GameException for bad options. */
+    private BookMaker(String[] args) {
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                throw error("missing value for %s", args[k]);
+            }
+            String value = args[k + 1];
+            try {
+                switch (args[k]) {
+                case "--sizes":
+                    String[] sizes = value.split(",");
+                    _sizes = new int[sizes.length];
+                    for (int i = 0; i < sizes.length; i += 1) {
+                        _sizes[i] = Integer.parseInt(sizes[i]);
+                        if (_sizes[i] < 2) {
+                            throw error("board sizes must be at least 2");
+                        }
+                    }
+                    break;
+                case "--plies":
+                    _plies = Integer.parseInt(value);
+                    break;
+                case "--width":
+                    _width = Integer.parseInt(value);
+                    break;
+                case "--margin":
+                    _margin = Integer.parseInt(value);
+                    break;
+                case "--depth":
+                    _depth = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    _threads = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    _bookName = value;
+                    break;
+                default:
+                    throw error("unknown book option: %s", args[k]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", args[k], value);
+            }
+        }
+        if (_plies < 1 || _width < 1 || _threads < 1 || _margin < 0) {
+            throw error("plies, width and threads must be positive, "
+                        + "and margin non-negative");
+        }
+        if (_margin > AI.WIN_VALUE) {
+            throw error("margin must be at most %d", AI.WIN_VALUE);
+        }
+        if (_depth < 2 || _depth > AI.MAX_PLY) {
+            throw error("depth must be between 2 and %d", AI.MAX_PLY);
+        }
+    }
+
+    /** Search all the positions of the book and write it, reporting
+     *  progress on the standard output. */
+    private void generate() throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        List<OpeningBook.Entry> entries = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        try {
+            for (int N : _sizes) {
+                List<Board> level = new ArrayList<>();
+                level.add(new MutableBoard(N));
+                HashSet<Long> seen = new HashSet<>();
+                for (int ply = 0; ply < _plies && !level.isEmpty();
+                     ply += 1) {
+                    List<Future<int[]>> results = new ArrayList<>();
+                    for (Board b : level) {
+                        Callable<int[]> task = () -> bookMoves(b);
+                        results.add(pool.submit(task));
+                    }
+                    List<Board> next = new ArrayList<>();
+                    for (int i = 0; i < level.size(); i += 1) {
+                        Board b = level.get(i);
+                        int[] moves = results.get(i).get();
+                        long key = OpeningBook.key(b);
+                        for (int k = 0; k < moves.length; k += 2) {
+                            entries.add(new OpeningBook.Entry(
+                                key, OpeningBook.move(b, moves[k]),
+                                moves[k + 1]));
+                            Board child = new MutableBoard(b);
+                            child.addSpot(child.whoseMove(), moves[k]);
+                            if (!child.won()
+                                && seen.add(OpeningBook.key(child))) {
+                                next.add(child);
+                            }
+                        }
+                    }
+                    System.out.printf("size %d, ply %d: %d positions%n",
+                                      N, ply, level.size());
+                    level = next;
+                }
+            }
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        OpeningBook.write(Paths.get(_bookName), entries);
+        System.out.printf("%d entries written to %s in %d ms%n",
+                          entries.size(), _bookName,
+                          System.currentTimeMillis() - start);
+    }
+
+    /** Returns the book moves of the position on B, which is not won, as
+     *  pairs of elements: a square number followed by its weight.  Of the
+     *  moves that lead to images of one another, only the one to the
+     *  lowest-numbered square is considered. */
+    private int[] bookMoves(Board b) {
+        AI ai = AI_PER_THREAD.get();
+        ai.clearCache();
+        b = new MutableBoard(b);
+        Color player = b.whoseMove();
+        int N = b.size(), symmetries = Symmetry.symmetries(b);
+        List<int[]> moves = new ArrayList<>();
+        for (int n = 0; n < N * N; n += 1) {
+            if (b.isLegal(player, n)
+                && Symmetry.representative(n, N, symmetries) == n) {
+                b.addSpot(player, n);
+                int value = b.won() ? AI.WIN_VALUE
+                    : -ai.findMove(b, _depth - 1).getVal();
+                b.undo();
+                moves.add(new int[] { n, value });
+            }
+        }
+        moves.sort((x, y) -> x[1] != y[1] ? Integer.compare(y[1], x[1])
+                   : Integer.compare(x[0], y[0]));
+        int best = moves.get(0)[1];
+        int count;
+        count = 0;
+        while (count < _width && count < moves.size()
+               && (long) best - moves.get(count)[1] <= _margin) {
+            count += 1;
+        }
+        int[] result = new int[2 * count];
+        for (int k = 0; k < count; k += 1) {
+            result[2 * k] = moves.get(k)[0];
+            result[2 * k + 1] = 1 + _margin - (best - moves.get(k)[1]);
+        }
+        return result;
+    }
+
+    /** The AI with which each generating thread searches. */
+    private static final ThreadLocal<AI> AI_PER_THREAD =
+        ThreadLocal.withInitial(() -> {
+                Writer nowhere = Writer.nullWriter();
+                return new AI(new Game(new StringReader(""), nowhere,
+                                       nowhere, nowhere), RED);
+            });
+
+    /** Board sizes covered. */
+    private int[] _sizes = { Defaults.BOARD_SIZE };
+    /** Number of book moves from the empty board covered. */
+    private int _plies = 6;
+    /** Largest number of book moves per position. */
+    private int _width = 2;
+    /** Largest difference in value between a book move and the best
+     *  move. */
+    private int _margin = 0;
+    /** Depth of the search of each position. */
+    private int _depth = Defaults.SEARCH_DEPTH + 2;
+    /** Number of positions searched at once. */
+    private int _threads = Runtime.getRuntime().availableProcessors();
+    /** Name of the book file. */
+    private String _bookName = Defaults.BOOK;
+
+}
@@ -0,0 +1,445 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** A resolver of the long chain reactions of very large boards, used by
+ *  MutableBoard once a cascade has grown past what its sequential loop
+ *  handles well.  Since every square that jumps during a move has the
+ *  mover's color, jumping is abelian: the spots each square ends with do
+ *  not depend on the order in which overfull squares jump.  So the board
+ *  is divided into stripes of whole rows, which are resolved separately
+ *  and in parallel, in synchronous waves.
+ *
+ *  Each stripe alone changes its own squares, and keeps a stack of those
+ *  that may be overfull, which is the only part of it looked at.  In a
+ *  wave, it first takes the spots given to its squares by the stripes
+ *  above and below in the previous wave, then makes its overfull squares
+ *  jump, depth first, until it has none left or has made as many jumps
+ *  as it has squares.  Spots given to squares of other stripes are queued
+ *  for them to take in the next wave.  The winner is checked after every
+ *  wave; when the board becomes one color, the queued spots are
+ *  delivered and resolution stops, and the squares that remain overfull
+ *  (whose contents, unlike those of the others, depend on the order of
+ *  jumping) stay so.
+ *
+ *  A Cascade only changes the packed squares of the board (see
+ *  MutableBoard).  It reports the original contents of each square it
+ *  changes, so that the board can bring its counts, key and index up to
+ *  date and record the move for undoing.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Cascade {
+
+    /** A resolver for boards with topology TOPOLOGY. */
+    Cascade(Topology topology) {
+        int N = topology.size();
+        _adjacent = topology.adjacent();
+        _first = topology.first();
+        _capacity = topology.capacity();
+        _touched = new int[N * N];
+        int rows = Math.max(MIN_STRIPE_ROWS,
+                            (N + MAX_STRIPES - 1) / MAX_STRIPES);
+        _stripeSquares = rows * N;
+        _stripes = new Stripe[(N + rows - 1) / rows];
+        for (int k = 0; k < _stripes.length; k += 1) {
+            _stripes[k] = new Stripe(k * rows * N,
+                                     Math.min(N, (k + 1) * rows) * N);
+        }
+        for (int k = 0; k < _stripes.length; k += 1) {
+            _stripes[k]._above = k > 0 ? _stripes[k - 1] : null;
+            _stripes[k]._below =
+                k + 1 < _stripes.length ? _stripes[k + 1] : null;
+        }
+    }
+
+    /** Do all jumping on the packed squares CELLS, assuming that the only
+     *  overfull squares are among the first COUNT elements of SQUARES, and
+     *  that those have the color with ordinal COLORBITS, of which there
+     *  are COLORED squares.  Returns the number of squares changed, whose
+     *  original contents are then given by changes(). */
+    int resolve(byte[] cells, int[] squares, int count, int colorBits,
+                int colored) {
+        if (_epoch == Integer.MAX_VALUE) {
+            Arrays.fill(_touched, 0);
+            _epoch = 0;
+        }
+        _cells = cells;
+        _colorBits = colorBits;
+        _epoch += 1;
+        _jumps = 0;
+        for (Stripe stripe : _stripes) {
+            stripe.start();
+        }
+        for (int k = 0; k < count; k += 1) {
+            _stripes[squares[k] / _stripeSquares].push(squares[k]);
+        }
+        while (colored < cells.length && runWave()) {
+            for (Stripe stripe : _stripes) {
+                colored += stripe._converted;
+                _jumps += stripe._jumped;
+                stripe.publish();
+            }
+        }
+        boolean sent;
+        // Deliver the queued spots, and any given by squares that jump
+        // to make room for them (see Stripe.give()).
+        do {
+            sent = false;
+            for (Stripe stripe : _stripes) {
+                stripe._jumped = 0;
+                stripe.receive();
+                _jumps += stripe._jumped;
+            }
+            for (Stripe stripe : _stripes) {
+                stripe.publish();
+                sent |= stripe._sentUpSize + stripe._sentDownSize > 0;
+            }
+        } while (sent);
+        int total;
+        total = 0;
+        for (Stripe stripe : _stripes) {
+            total += stripe._logSize;
+        }
+        if (_changes.length < total) {
+            _changes = new int[Math.max(total, 2 * _changes.length)];
+        }
+        total = 0;
+        for (Stripe stripe : _stripes) {
+            System.arraycopy(stripe._log, 0, _changes, total,
+                             stripe._logSize);
+            total += stripe._logSize;
+        }
+        _cells = null;
+        return total;
+    }
+
+    /** Returns the original contents of the squares changed by the last
+     *  resolve(), as many as it returned, each encoded as the square
+     *  number shifted left MutableBoard.JOURNAL_CELL_SHIFT bits plus its
+     *  packed contents, as in the undo journal of MutableBoard.  The
+     *  caller may overwrite them. */
+    int[] changes() {
+        return _changes;
+    }
+
+    /** Returns the number of jumps in the last resolve(). */
+    long jumps() {
+        return _jumps;
+    }
+
+    /** Process the next wave on each stripe that has anything to do, in
+     *  parallel if there is enough to do.  Returns false, doing nothing,
+     *  if no stripe has. */
+    private boolean runWave() {
+        int busy;
+        long work;
+        busy = 0;
+        work = 0;
+        for (Stripe stripe : _stripes) {
+            if (!stripe.idle()) {
+                busy += 1;
+                work += stripe.work();
+            }
+        }
+        if (busy == 0) {
+            return false;
+        }
+        if (busy > 1 && work >= PARALLEL_WORK && THREADS > 1) {
+            Future<?>[] helpers = new Future<?>[busy - 1];
+            Stripe last = null;
+            busy = 0;
+            for (Stripe stripe : _stripes) {
+                if (stripe.idle()) {
+                    stripe.skip();
+                } else if (last == null) {
+                    last = stripe;
+                } else {
+                    helpers[busy] = pool().submit(last::run);
+                    busy += 1;
+                    last = stripe;
+                }
+            }
+            last.run();
+            for (Future<?> helper : helpers) {
+                try {
+                    helper.get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            }
+        } else {
+            for (Stripe stripe : _stripes) {
+                if (stripe.idle()) {
+                    stripe.skip();
+                } else {
+                    stripe.run();
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Returns the pool of threads that process stripes, creating it if
+     *  needed. */
+    private static synchronized ThreadPoolExecutor pool() {
+        if (_pool == null) {
+            _pool = new ThreadPoolExecutor(
+                THREADS - 1, THREADS - 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                r -> {
+                    Thread thread = new Thread(r, "jump61-cascade");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            _pool.allowCoreThreadTimeOut(true);
+        }
+        return _pool;
+    }
+
+    /** A band of whole rows of the board, with its squares that may be
+     *  overfull and the spots it gives to the stripes above and below. */
+    private final class Stripe {
+
+        /** The stripe of squares #START to #END - 1. */
+        Stripe(int start, int end) {
+            _start = start;
+            _end = end;
+        }
+
+        /** Prepare for a new resolve(). */
+        void start() {
+            _logSize = _top = 0;
+            _upSize = _downSize = _sentUpSize = _sentDownSize = 0;
+        }
+
+        /** Add square #N, one of mine, to those that may be overfull. */
+        void push(int n) {
+            if (_top == _pending.length) {
+                _pending = Arrays.copyOf(_pending, 2 * _top);
+            }
+            _pending[_top] = n;
+            _top += 1;
+        }
+
+        /** Returns true iff I have nothing to do in the next wave. */
+        boolean idle() {
+            return _top == 0
+                && (_above == null || _above._sentDownSize == 0)
+                && (_below == null || _below._sentUpSize == 0);
+        }
+
+        /** Returns an estimate of what I have to do in the next wave. */
+        long work() {
+            return _top + (_above == null ? 0 : _above._sentDownSize)
+                + (_below == null ? 0 : _below._sentUpSize);
+        }
+
+        /** Take no part in the current wave. */
+        void skip() {
+            _converted = _jumped = 0;
+            _upSize = _downSize = 0;
+        }
+
+        /** Make the spots I gave to other stripes in the current wave
+         *  available for them to take in the next. */
+        void publish() {
+            int[] up = _up, down = _down;
+            _up = _sentUp;
+            _down = _sentDown;
+            _sentUp = up;
+            _sentDown = down;
+            _sentUpSize = _upSize;
+            _sentDownSize = _downSize;
+            _upSize = _downSize = 0;
+        }
+
+        /** Take the spots given to my squares by my neighbor stripes in
+         *  the last wave (see give()). */
+        void receive() {
+            if (_above != null) {
+                for (int k = 0; k < _above._sentDownSize; k += 1) {
+                    give(_above._sentDown[k]);
+                }
+            }
+            if (_below != null) {
+                for (int k = 0; k < _below._sentUpSize; k += 1) {
+                    give(_below._sentUp[k]);
+                }
+            }
+        }
+
+        /** Process the current wave: take the spots given to me, then
+         *  make my overfull squares jump until none is left or I have
+         *  made as many jumps as I have squares, queuing the spots given
+         *  to other stripes. */
+        void run() {
+            _converted = _jumped = 0;
+            receive();
+            byte[] cells = _cells, capacity = _capacity;
+            int budget = _end - _start;
+            while (_top > 0 && _jumped < budget) {
+                int s = _pending[_top - 1];
+                _top -= 1;
+                if (cells[s] >> MutableBoard.COLOR_BITS <= capacity[s]) {
+                    continue;
+                }
+                jump(s);
+            }
+        }
+
+        /** Make square #N, one of mine, jump once, adding it to those
+         *  that may be overfull if it still is, and giving a spot to
+         *  each of its neighbors. */
+        private void jump(int n) {
+            byte[] capacity = _capacity;
+            int[] adjacent = _adjacent, first = _first;
+            _jumped += 1;
+            add(n, -capacity[n]);
+            if (_cells[n] >> MutableBoard.COLOR_BITS > capacity[n]) {
+                push(n);
+            }
+            for (int k = first[n + 1] - 1; k >= first[n]; k -= 1) {
+                int m = adjacent[k];
+                if (m < _start) {
+                    sendUp(m);
+                } else if (m >= _end) {
+                    sendDown(m);
+                } else {
+                    give(m);
+                }
+            }
+        }
+
+        /** Add a spot to square #N, one of mine, adding it to those that
+         *  may be overfull if it becomes so.  Spots can pile up on a
+         *  square beyond its capacity, as when its neighbor in another
+         *  stripe jumps many times in a wave, so while it holds
+         *  MutableBoard.MAX_SPOTS, it first jumps to make room. */
+        private void give(int n) {
+            while (_cells[n] >> MutableBoard.COLOR_BITS
+                   == MutableBoard.MAX_SPOTS) {
+                jump(n);
+            }
+            add(n, 1);
+            if (_cells[n] >> MutableBoard.COLOR_BITS > _capacity[n]) {
+                push(n);
+            }
+        }
+
+        /** Add DELTA spots to square #N, one of mine, giving it the
+         *  mover's color. */
+        private void add(int n, int delta) {
+            byte[] cells = _cells;
+            int old = cells[n] & 0xff;
+            if ((old & MutableBoard.COLOR_MASK) != _colorBits) {
+                _converted += 1;
+            }
+            int spots = (old >> MutableBoard.COLOR_BITS) + delta;
+            assert spots <= MutableBoard.MAX_SPOTS;
+            cells[n] =
+                (byte) (spots << MutableBoard.COLOR_BITS | _colorBits);
+            if (_touched[n] != _epoch) {
+                _touched[n] = _epoch;
+                if (_logSize == _log.length) {
+                    _log = Arrays.copyOf(_log, 2 * _logSize);
+                }
+                _log[_logSize] = n << MutableBoard.JOURNAL_CELL_SHIFT | old;
+                _logSize += 1;
+            }
+        }
+
+        /** Queue a spot for square #N of the stripe above. */
+        private void sendUp(int n) {
+            if (_upSize == _up.length) {
+                _up = Arrays.copyOf(_up, 2 * _upSize);
+            }
+            _up[_upSize] = n;
+            _upSize += 1;
+        }
+
+        /** Queue a spot for square #N of the stripe below. */
+        private void sendDown(int n) {
+            if (_downSize == _down.length) {
+                _down = Arrays.copyOf(_down, 2 * _downSize);
+            }
+            _down[_downSize] = n;
+            _downSize += 1;
+        }
+
+        /** Bounds of my squares: #_start to #_end - 1. */
+        private final int _start, _end;
+        /** The stripes above and below me (null at the edges). */
+        private Stripe _above, _below;
+        /** Stack of my squares that may be overfull. */
+        private int[] _pending = new int[64];
+        /** Number of elements of _pending used. */
+        private int _top;
+        /** Squares of the stripes above and below given a spot each by
+         *  me in the current wave. */
+        private int[] _up = new int[64], _down = new int[64];
+        /** Numbers of elements of _up and _down used. */
+        private int _upSize, _downSize;
+        /** Squares of the stripes above and below given a spot each by
+         *  me in the last wave. */
+        private int[] _sentUp = new int[64], _sentDown = new int[64];
+        /** Numbers of elements of _sentUp and _sentDown used. */
+        private int _sentUpSize, _sentDownSize;
+        /** Number of squares given the mover's color in the current
+         *  wave. */
+        private int _converted;
+        /** Number of jumps in the current wave. */
+        private int _jumped;
+        /** Original contents of my squares changed, encoded as for
+         *  changes(). */
+        private int[] _log = new int[64];
+        /** Number of elements of _log used. */
+        private int _logSize;
+    }
+
+    /** Fewest rows in a stripe. */
+    private static final int MIN_STRIPE_ROWS = 16;
+    /** Number of threads processing stripes, including the caller. */
+    private static final int THREADS =
+        Runtime.getRuntime().availableProcessors();
+    /** Most stripes on a board, enough for each thread to have several
+     *  so that the busy ones are spread over all threads. */
+    private static final int MAX_STRIPES = 4 * THREADS;
+    /** Least work in a wave (overfull squares and spots received) for
+     *  it to be processed in parallel. */
+    private static final int PARALLEL_WORK = 1 << 8;
+    /** Seconds an idle stripe thread waits before exiting. */
+    private static final long IDLE_SECONDS = 10;
+
+    /** Shared threads processing stripes (null until needed). */
+    private static ThreadPoolExecutor _pool;
+
+    /** Neighbor lists of the squares, as for Topology.adjacent(). */
+    private final int[] _adjacent;
+    /** Index bounds into _adjacent, as for Topology.first(). */
+    private final int[] _first;
+    /** Number of neighbors of each square, as for Topology.capacity(). */
+    private final byte[] _capacity;
+    /** Number of squares in each stripe but the last. */
+    private final int _stripeSquares;
+    /** The stripes, in order of rows. */
+    private final Stripe[] _stripes;
+    /** For each square, the number of the last resolve() that changed
+     *  it. */
+    private final int[] _touched;
+    /** Number of the current resolve(). */
+    private int _epoch;
+    /** Squares of the board being resolved. */
+    private byte[] _cells;
+    /** Ordinal of the mover's color. */
+    private int _colorBits;
+    /** Number of jumps in the last resolve(). */
+    private long _jumps;
+    /** Original contents of changed squares, as for changes(). */
+    private int[] _changes = new int[64];
+
+}
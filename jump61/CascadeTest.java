@@ -0,0 +1,74 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of the parallel resolution of cascades.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class CascadeTest extends TestCase {
+
+    @Test
+    public void testPileUp() {
+        final int N = 256;
+        Topology topology = Topology.forSize(N);
+        byte[] capacity = topology.capacity();
+        int[] first = topology.first(), adjacent = topology.adjacent();
+        int[] spots = new int[N * N];
+        for (int n = 0; n < N * N / 2; n += 1) {
+            int r = n / N, c = n % N;
+            if (r > 0 && c == 2 * r) {
+                spots[n] = MutableBoard.MAX_SPOTS - 1;
+            } else if (r + 1 < N / 2 && c == 2 * r + 2) {
+                spots[n] = MutableBoard.MAX_SPOTS;
+            } else {
+                spots[n] = capacity[n] - 1;
+            }
+        }
+        byte[] cells = new byte[N * N];
+        int[] squares = new int[N * N];
+        ArrayList<Integer> pending = new ArrayList<>();
+        int count;
+        count = 0;
+        for (int n = 0; n < N * N; n += 1) {
+            if (spots[n] > 0) {
+                cells[n] = (byte) (spots[n] << MutableBoard.COLOR_BITS
+                                   | RED.ordinal());
+            }
+            if (spots[n] > capacity[n]) {
+                squares[count] = n;
+                count += 1;
+                pending.add(n);
+            }
+        }
+        new Cascade(topology).resolve(cells, squares, count, RED.ordinal(),
+                                      N * N / 2);
+        while (!pending.isEmpty()) {
+            int n = pending.remove(pending.size() - 1);
+            if (spots[n] <= capacity[n]) {
+                continue;
+            }
+            spots[n] -= capacity[n];
+            for (int k = first[n]; k < first[n + 1]; k += 1) {
+                int m = adjacent[k];
+                spots[m] += 1;
+                if (spots[m] == capacity[m] + 1) {
+                    pending.add(m);
+                }
+            }
+            if (spots[n] > capacity[n]) {
+                pending.add(n);
+            }
+        }
+        for (int n = 0; n < N * N; n += 1) {
+            assertEquals("wrong spots at " + n, spots[n],
+                         cells[n] >> MutableBoard.COLOR_BITS);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/** A source of command lines, each split into whitespace-separated
+ *  tokens.  Input is read through a private buffer in large blocks, and
+ *  each line is split in place, without regular expressions: the
+ *  tokens of the current line are only converted to Strings on request,
+ *  and numeric tokens can be read without creating any objects.  An
+ *  IOException on input is treated as the end of the input.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class CommandReader {
+
+    /** A reader of lines from INPUT, which may be null if lines are
+     *  only supplied through parse. */
+    CommandReader(Reader input) {
+        _input = input;
+    }
+
+    /** Make the next line of input the current line.  Returns false,
+     *  leaving no tokens, if the input is exhausted. */
+    boolean next() {
+        _length = _count = 0;
+        boolean any;
+        any = false;
+        while (true) {
+            if (_pos == _limit && !fill()) {
+                break;
+            }
+            any = true;
+            char c = _buffer[_pos++];
+            if (c == '\n') {
+                break;
+            }
+            append(c);
+        }
+        endToken();
+        return any;
+    }
+
+    /** Make LINE the current line. */
+    void parse(String line) {
+        _length = _count = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            append(line.charAt(i));
+        }
+        endToken();
+    }
+
+    /** Returns the number of tokens on the current line. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns token #K of the current line.  Throws
+     *  ArrayIndexOutOfBoundsException if there is no such token. */
+    String get(int k) {
+        check(k);
+        return new String(_line, _starts[k], _ends[k] - _starts[k]);
+    }
+
+    /** Returns true iff token #K of the current line exists and consists
+     *  only of decimal digits. */
+    boolean isNumber(int k) {
+        if (k >= _count) {
+            return false;
+        }
+        for (int i = _starts[k]; i < _ends[k]; i += 1) {
+            if (_line[i] < '0' || _line[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the value of token #K of the current line as a decimal
+     *  int, as for Integer.parseInt.  Throws NumberFormatException if it
+     *  is not one, and ArrayIndexOutOfBoundsException if there is no such
+     *  token. */
+    int getInt(int k) {
+        long value = getLong(k);
+        if (value != (int) value) {
+            throw new NumberFormatException();
+        }
+        return (int) value;
+    }
+
+    /** Returns the value of token #K of the current line as a decimal
+     *  long, as for Long.parseLong.  Throws NumberFormatException if it
+     *  is not one, and ArrayIndexOutOfBoundsException if there is no such
+     *  token. */
+    long getLong(int k) {
+        check(k);
+        int i = _starts[k], end = _ends[k];
+        boolean negative = _line[i] == '-';
+        if (negative || _line[i] == '+') {
+            i += 1;
+        }
+        if (i == end || end - i > MAX_LONG_DIGITS) {
+            return Long.parseLong(get(k));
+        }
+        long value;
+        value = 0;
+        for (; i < end; i += 1) {
+            int digit = _line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(get(k));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /** Throw ArrayIndexOutOfBoundsException unless the current line has
+     *  a token #K. */
+    private void check(int k) {
+        if (k >= _count) {
+            throw new ArrayIndexOutOfBoundsException(k);
+        }
+    }
+
+    /** Add C to the current line, ending or starting a token as
+     *  needed. */
+    private void append(char c) {
+        if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+            endToken();
+            return;
+        }
+        if (_length == _line.length) {
+            _line = Arrays.copyOf(_line, 2 * _line.length);
+        }
+        if (_start < 0) {
+            _start = _length;
+        }
+        _line[_length++] = c;
+    }
+
+    /** End the token in progress, if any. */
+    private void endToken() {
+        if (_start < 0) {
+            return;
+        }
+        if (_count == _starts.length) {
+            _starts = Arrays.copyOf(_starts, 2 * _count);
+            _ends = Arrays.copyOf(_ends, 2 * _count);
+        }
+        _starts[_count] = _start;
+        _ends[_count] = _length;
+        _count += 1;
+        _start = -1;
+    }
+
+    /** Refill my buffer from my input.  Returns false if there is no
+     *  more input. */
+    private boolean fill() {
+        if (_input == null) {
+            return false;
+        }
+        try {
+            int n = _input.read(_buffer);
+            if (n <= 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Number of digits of a decimal long that cannot overflow. */
+    private static final int MAX_LONG_DIGITS = 18;
+    /** Size of my input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of input. */
+    private final Reader _input;
+    /** Buffered input, of which _buffer[_pos .. _limit-1] is unread. */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+    /** Bounds of the unread input in _buffer. */
+    private int _pos, _limit;
+    /** The non-blank characters of the current line, each token
+     *  contiguous. */
+    private char[] _line = new char[128];
+    /** Number of characters in _line. */
+    private int _length;
+    /** Token #k of the current line is _line[_starts[k] .. _ends[k]-1]. */
+    private int[] _starts = new int[8], _ends = new int[8];
+    /** Number of tokens on the current line. */
+    private int _count;
+    /** Start in _line of the token in progress, or -1 if none. */
+    private int _start = -1;
+
+}
@@ -0,0 +1,32 @@
+package jump61;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of command parsing.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class CommandReaderTest extends TestCase {
+
+    @Test
+    public void testCommandReader() {
+        CommandReader R =
+            new CommandReader(new StringReader("  set 1\t2 3  b\r\n\n-7"));
+        assertTrue("missing line", R.next());
+        assertEquals("wrong token count", 5, R.size());
+        assertEquals("set", R.get(0));
+        assertTrue("not a number", R.isNumber(2));
+        assertEquals("wrong number", 3, R.getInt(3));
+        assertEquals("b", R.get(4));
+        assertTrue("missing blank line", R.next());
+        assertEquals("blank line has tokens", 0, R.size());
+        assertTrue("missing last line", R.next());
+        assertFalse("sign taken for digit", R.isNumber(0));
+        assertEquals("wrong negative", -7, R.getLong(0));
+        assertFalse("input not ended", R.next());
+    }
+
+}
@@ -10,7 +10,11 @@ class ConstantBoard extends Board {
     /** A new ConstantBoard that allows a read-only view of BOARD. */
     ConstantBoard(Board board) {
         _board = board;
-        squares = board.squares;
+    }
+
+    /** Make me a view of BOARD from now on. */
+    void setBoard(Board board) {
+        _board = board;
     }
 
     @Override
@@ -53,6 +57,11 @@ class ConstantBoard extends Board {
         return _board.isLegal(player, r, c);
     }
 
+    @Override
+    boolean isLegal(Color player, int n) {
+        return _board.isLegal(player, n);
+    }
+
     @Override
     boolean isLegal(Color player) {
         return _board.isLegal(player);
@@ -63,6 +72,26 @@ class ConstantBoard extends Board {
         return _board.numOfColor(color);
     }
 
+    @Override
+    public boolean won() {
+        return _board.won();
+    }
+
+    @Override
+    long key() {
+        return _board.key();
+    }
+
+    @Override
+    void symmetricKeys(long[] keys) {
+        _board.symmetricKeys(keys);
+    }
+
+    @Override
+    public String toString() {
+        return _board.toString();
+    }
+
     @Override
     public boolean equals(Object obj) {
         return _board.equals(obj);
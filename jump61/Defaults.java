@@ -11,5 +11,29 @@ class Defaults {
     /** Default board size. */
     static final int BOARD_SIZE = 6;
 
+    /** Depth (in moves) to which the AI searches. */
+    static final int SEARCH_DEPTH = 4;
+
+    /** Milliseconds the AI may spend on each move (0 for no limit, in
+     *  which case it searches to SEARCH_DEPTH). */
+    static final long MOVE_TIME = 0;
+
+    /** Milliseconds on each player's game clock (0 for no clock). */
+    static final long GAME_TIME = 0;
+
+    /** Number of playouts the Monte Carlo AI runs per move when it has
+     *  no time limit. */
+    static final int PLAYOUTS = 20000;
+
+    /** Number of threads the AI searches with. */
+    static final int THREADS = 1;
+
+    /** Base-2 logarithm of the number of entries in an AI's
+     *  transposition table. */
+    static final int TABLE_BITS = 18;
+
+    /** Name of the opening book file written by default. */
+    static final String BOOK = "jump61.book";
+
     // FIXME ?
 }
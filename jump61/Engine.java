@@ -0,0 +1,479 @@
+package jump61;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static jump61.GameException.error;
+
+/** An analysis engine for programs that drive jump61 through a line
+ *  protocol, in the manner of UCI chess engines, rather than through the
+ *  prompts of Game.  Requests come from the standard input or, with a
+ *  port, from any number of connections to that port on the local host,
+ *  each connection being a session with its own positions.  Positions
+ *  are named by ids (0 by default), so that a session may analyze many
+ *  at once.  Searches run asynchronously on a fixed pool of engines, each
+ *  an AI with its own transposition table and search board, which are
+ *  reused by all requests and sessions, so one process serves any number
+ *  of games without paying again for startup and warmup.
+ *
+ *  The requests are (see Usage.txt):
+ *      position [id K] N [moves R C ...]
+ *      go [id K] [depth D] [movetime MS] [infinite]
+ *      stop [id K]
+ *      info
+ *      isready
+ *      quit
+ *  A search reports each depth it completes with a line
+ *      info id K depth D value V move R C nodes N time MS nps X
+ *  and ends with a line
+ *      bestmove id K R C value V depth D
+ *  The info request is answered by
+ *      info engines E busy B searches S
+ *  isready by readyok, and bad requests by error lines.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Engine {
+
+    /** Serve requests as directed by the options in ARGS (see
+     *  Usage.txt), returning an exit code: 0 normally, and 1 for
+     *  errors. */
+    static int run(String[] args) {
+        Engine engine;
+        try {
+            engine = new Engine(args);
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            return 1;
+        }
+        if (engine._port < 0) {
+            engine.serve(new InputStreamReader(System.in),
+                         new OutputStreamWriter(System.out));
+            return 0;
+        }
+        try (ServerSocket server =
+             new ServerSocket(engine._port, 0,
+                              InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket client = server.accept();
+                Thread session = new Thread(() -> engine.serve(client),
+                                            "jump61-session");
+                session.start();
+            }
+        } catch (IOException excp) {
+            System.err.printf("cannot serve port %d: %s%n", engine._port,
+                              excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** An engine configured by the options in ARGS.  Throws GameException
+     *  for bad options. */
+    Engine(String[] args) {
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                throw error("missing value for %s", args[k]);
+            }
+            String value = args[k + 1];
+            try {
+                switch (args[k]) {
+                case "--engines":
+                    _engines = Integer.parseInt(value);
+                    break;
+                case "--threads":
+                    _threads = Integer.parseInt(value);
+                    break;
+                case "--port":
+                    _port = Integer.parseInt(value);
+                    break;
+                default:
+                    throw error("unknown engine option: %s", args[k]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", args[k], value);
+            }
+        }
+        if (_engines < 1 || _threads < 1) {
+            throw error("engines and threads must be positive");
+        }
+        _pool = Executors.newFixedThreadPool(_engines, r -> {
+            Thread thread = new Thread(r, "jump61-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Writer nowhere = Writer.nullWriter();
+        for (int k = 0; k < _engines; k += 1) {
+            AI ai = new AI(new Game(new StringReader(""), nowhere, nowhere,
+                                    nowhere), Color.RED);
+            ai.setThreads(_threads);
+            _idle.add(new Slot(ai));
+        }
+    }
+
+    /** Serve the session on the connection CLIENT, closing it at the
+     *  end.  Since nobody is left to read their results, the session's
+     *  searches are stopped when the client disconnects. */
+    private void serve(Socket client) {
+        try (Socket socket = client) {
+            new Session(new InputStreamReader(socket.getInputStream(),
+                                              StandardCharsets.UTF_8),
+                        new OutputStreamWriter(socket.getOutputStream(),
+                                               StandardCharsets.UTF_8),
+                        true).run();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Serve one session, reading requests from INPUT and writing
+     *  replies to OUTPUT, until a quit request or the end of INPUT.
+     *  Returns once the session's searches are done; those still running
+     *  after a quit request are stopped, and those running at the end of
+     *  INPUT finish. */
+    void serve(Reader input, Writer output) {
+        new Session(input, output, false).run();
+    }
+
+    /** An engine of the pool: an AI and a board on which it searches. */
+    private static final class Slot {
+        /** A slot holding AI. */
+        Slot(AI ai) {
+            _ai = ai;
+        }
+
+        /** The searcher. */
+        private final AI _ai;
+        /** Copy of the position searched (null until first used). */
+        private Board _board;
+    }
+
+    /** A search requested by a go request. */
+    private static final class Search {
+        /** A search of a copy of BOARD, the position with id ID, to
+         *  depth DEPTH, and for at most MILLIS milliseconds if MILLIS >
+         *  0. */
+        Search(String id, Board board, int depth, long millis) {
+            _id = id;
+            _board = Board.mutableCopy(null, board);
+            _depth = depth;
+            _millis = millis;
+        }
+
+        /** Ask this search to stop, whether or not it has started. */
+        synchronized void stop() {
+            _stopped = true;
+            if (_ai != null) {
+                _ai.stop();
+            }
+        }
+
+        /** Record that AI is running this search, stopping it at once if
+         *  the search has already been stopped. */
+        synchronized void start(AI ai) {
+            _ai = ai;
+            if (_stopped) {
+                ai.stop();
+            }
+        }
+
+        /** Id of the position searched. */
+        private final String _id;
+        /** The position searched. */
+        private final Board _board;
+        /** Maximum depth searched. */
+        private final int _depth;
+        /** Time limit in milliseconds (0 for none). */
+        private final long _millis;
+        /** The AI running this search (null until it starts). */
+        private AI _ai;
+        /** True iff this search has been asked to stop. */
+        private boolean _stopped;
+    }
+
+    /** The state of one session: its positions and searches, and its
+     *  connection. */
+    private final class Session {
+
+        /** A session reading requests from INPUT and writing replies to
+         *  OUTPUT, which stops its searches at the end of INPUT iff
+         *  STOPATEND. */
+        Session(Reader input, Writer output, boolean stopAtEnd) {
+            _input = new CommandReader(input);
+            _out = new PrintWriter(output);
+            _stopAtEnd = stopAtEnd;
+        }
+
+        /** Serve requests until a quit request or the end of the input,
+         *  then wait for this session's searches to finish, first
+         *  stopping them after a quit request, or at the end of the input
+         *  if so configured. */
+        void run() {
+            boolean quit;
+            quit = false;
+            while (!quit && _input.next()) {
+                try {
+                    quit = execute();
+                } catch (NumberFormatException excp) {
+                    reply("error bad number in request");
+                } catch (ArrayIndexOutOfBoundsException excp) {
+                    reply("error missing argument in request");
+                } catch (GameException excp) {
+                    reply("error %s", excp.getMessage());
+                }
+            }
+            if (quit || _stopAtEnd) {
+                stopAll();
+            }
+            for (Future<?> task : _tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    reply("error %s", excp.getMessage());
+                }
+            }
+            _out.flush();
+        }
+
+        /** Execute the request on the current line of my input.  Returns
+         *  true iff it is a quit request. */
+        private boolean execute() {
+            CommandReader args = _input;
+            if (args.size() == 0) {
+                return false;
+            }
+            switch (args.get(0)) {
+            case "position":
+                position();
+                break;
+            case "go":
+                go();
+                break;
+            case "stop":
+                stop();
+                break;
+            case "info":
+                reply("info engines %d busy %d searches %d", _engines,
+                      _engines - _idle.size(), _searches.size());
+                break;
+            case "isready":
+                reply("readyok");
+                break;
+            case "quit":
+                return true;
+            default:
+                throw error("unknown request: %s", args.get(0));
+            }
+            return false;
+        }
+
+        /** Execute a position request: set a position to an empty board
+         *  of the given size after the given moves. */
+        private void position() {
+            CommandReader args = _input;
+            int k = 1;
+            String id = DEFAULT_ID;
+            if (args.size() > k && args.get(k).equals("id")) {
+                id = args.get(k + 1);
+                k += 2;
+            }
+            int N = args.getInt(k);
+            if (N < 2 || N > MAX_SIZE) {
+                throw error("board size must be between 2 and %d",
+                            MAX_SIZE);
+            }
+            k += 1;
+            Board board = _positions.get(id);
+            if (board == null || board.size() != N) {
+                board = new MutableBoard(N);
+            } else {
+                board.clear(N);
+            }
+            if (k < args.size()) {
+                if (!args.get(k).equals("moves")) {
+                    throw error("expected moves: %s", args.get(k));
+                }
+                for (k += 1; k < args.size(); k += 2) {
+                    int r = args.getInt(k), c = args.getInt(k + 1);
+                    if (!board.exists(r, c) || board.won()
+                        || !board.isLegal(board.whoseMove(), r, c)) {
+                        throw error("illegal move %d %d", r, c);
+                    }
+                    board.addSpot(board.whoseMove(), r, c);
+                }
+            }
+            _positions.put(id, board);
+        }
+
+        /** Execute a go request: start searching a position. */
+        private void go() {
+            CommandReader args = _input;
+            String id = DEFAULT_ID;
+            int depth = -1;
+            long millis = 0;
+            boolean infinite = false;
+            for (int k = 1; k < args.size(); k += 1) {
+                switch (args.get(k)) {
+                case "id":
+                    id = args.get(k + 1);
+                    k += 1;
+                    break;
+                case "depth":
+                    depth = args.getInt(k + 1);
+                    if (depth < 1 || depth > AI.MAX_PLY) {
+                        throw error("depth must be between 1 and %d",
+                                    AI.MAX_PLY);
+                    }
+                    k += 1;
+                    break;
+                case "movetime":
+                    millis = args.getLong(k + 1);
+                    k += 1;
+                    break;
+                case "infinite":
+                    infinite = true;
+                    break;
+                default:
+                    throw error("unknown go option: %s", args.get(k));
+                }
+            }
+            if (depth < 0) {
+                depth = infinite || millis > 0 ? AI.MAX_PLY
+                    : Defaults.SEARCH_DEPTH;
+            }
+            Board board = _positions.get(id);
+            if (board == null) {
+                throw error("no position %s", id);
+            } else if (board.won()) {
+                throw error("position %s is won", id);
+            } else if (_searches.containsKey(id)) {
+                throw error("already searching %s", id);
+            }
+            Search search = new Search(id, board, depth, millis);
+            _searches.put(id, search);
+            _tasks.removeIf(Future::isDone);
+            _tasks.add(_pool.submit(() -> search(search)));
+        }
+
+        /** Execute a stop request: stop one search, or all of mine. */
+        private void stop() {
+            CommandReader args = _input;
+            if (args.size() > 2 && args.get(1).equals("id")) {
+                Search search = _searches.get(args.get(2));
+                if (search != null) {
+                    search.stop();
+                }
+            } else {
+                stopAll();
+            }
+        }
+
+        /** Stop all of my searches. */
+        private void stopAll() {
+            for (Search search : _searches.values()) {
+                search.stop();
+            }
+        }
+
+        /** Run SEARCH on an idle engine, reporting its progress and
+         *  result. */
+        private void search(Search search) {
+            Slot slot;
+            try {
+                slot = _idle.take();
+            } catch (InterruptedException excp) {
+                _searches.remove(search._id);
+                return;
+            }
+            AI ai = slot._ai;
+            Board b = Board.mutableCopy(slot._board, search._board);
+            slot._board = b;
+            AI.Move best;
+            try {
+                long start = System.nanoTime(), nodes = ai.nodes();
+                ai.setProgress(move -> {
+                    long millis = (System.nanoTime() - start) / 1000000;
+                    long visited = ai.nodes() - nodes;
+                    int n = move.getMove();
+                    reply("info id %s depth %d value %d move %d %d nodes %d"
+                          + " time %d nps %d", search._id, move.getDepth(),
+                          move.getVal(), b.row(n), b.col(n), visited, millis,
+                          visited * 1000 / Math.max(1, millis));
+                });
+                ai.clearStop();
+                search.start(ai);
+                best = ai.search(b, search._depth, search._millis);
+            } finally {
+                ai.setProgress(null);
+                _searches.remove(search._id);
+                _idle.add(slot);
+            }
+            int n = best.getMove();
+            reply("bestmove id %s %d %d value %d depth %d", search._id,
+                  b.row(n), b.col(n), best.getVal(), best.getDepth());
+        }
+
+        /** Write a reply line formed from FORMAT and ARGS, as for
+         *  printf, and flush it. */
+        private void reply(String format, Object... args) {
+            synchronized (_out) {
+                _out.printf(format, args);
+                _out.print('\n');
+                _out.flush();
+            }
+        }
+
+        /** Requests read. */
+        private final CommandReader _input;
+        /** Destination of replies. */
+        private final PrintWriter _out;
+        /** True iff my searches are stopped at the end of my input. */
+        private final boolean _stopAtEnd;
+        /** Positions set by position requests, by id.  Only the session's
+         *  own thread uses this. */
+        private final HashMap<String, Board> _positions = new HashMap<>();
+        /** Searches started and not yet finished, by position id. */
+        private final ConcurrentHashMap<String, Search> _searches =
+            new ConcurrentHashMap<>();
+        /** Tasks running my searches, including any that have finished
+         *  since the last go request.  A task removes its search from
+         *  _searches before writing its result, so the session waits
+         *  for these, not for _searches, before closing.  Only the
+         *  session's own thread uses this. */
+        private final ArrayList<Future<?>> _tasks = new ArrayList<>();
+    }
+
+    /** Id of a position when a request names none. */
+    private static final String DEFAULT_ID = "0";
+    /** Largest board size analyzed. */
+    private static final int MAX_SIZE = 64;
+
+    /** Number of engines in the pool. */
+    private int _engines = Runtime.getRuntime().availableProcessors();
+    /** Number of threads with which each engine searches. */
+    private int _threads = 1;
+    /** Local port on which requests are served (-1 for the standard
+     *  input). */
+    private int _port = -1;
+    /** Threads running searches, one per engine. */
+    private final ExecutorService _pool;
+    /** Engines not running a search. */
+    private final LinkedBlockingQueue<Slot> _idle =
+        new LinkedBlockingQueue<>();
+
+}
@@ -0,0 +1,35 @@
+package jump61;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of the engine protocol.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class EngineTest extends TestCase {
+
+    @Test
+    public void testEngine() {
+        Engine engine = new Engine(new String[] { "--engines", "2" });
+        StringWriter out = new StringWriter();
+        engine.serve(new StringReader("position 4 moves 1 1 2 2\n"
+                                      + "position id b 3\n"
+                                      + "go depth 3\n"
+                                      + "go id b depth 2\n"
+                                      + "go id c\n"
+                                      + "position 4 moves 1 1 1 1 1 1\n"),
+                     out);
+        String replies = out.toString();
+        assertTrue("no progress", replies.contains("info id 0 depth 3 "));
+        assertTrue("no best move", replies.contains("bestmove id 0 "));
+        assertTrue("no best move for b", replies.contains("bestmove id b "));
+        assertTrue("no error for c", replies.contains("error no position c"));
+        assertTrue("illegal move accepted",
+                   replies.contains("error illegal move 1 1"));
+    }
+
+}
@@ -1,9 +1,12 @@
 package jump61;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.io.PrintWriter;
-import java.util.Scanner;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
@@ -25,15 +28,25 @@ class Game {
      *  INPUT, PROMPTS, OUTPUT, and ERROROUTPUT, and is responsible for
      *  closing them when its play method returns. */
     Game(Reader input, Writer prompts, Writer output, Writer errorOutput) {
+        this(input, prompts, output, errorOutput, false);
+    }
+
+    /** A new Game as for Game(INPUT, PROMPTS, OUTPUT, ERROROUTPUT).  If
+     *  BATCH, the game plays a script: it prints no prompts, and flushes
+     *  OUTPUT and ERROROUTPUT only when they fill or the session ends,
+     *  rather than after every line. */
+    Game(Reader input, Writer prompts, Writer output, Writer errorOutput,
+         boolean batch) {
         _board = new MutableBoard(Defaults.BOARD_SIZE);
         _readonlyBoard = new ConstantBoard(_board);
+        _batch = batch;
         _prompter = new PrintWriter(prompts, true);
-        _inp = new Scanner(input);
-        _inp.useDelimiter("(?m)$|^|\\p{Blank}");
-        _out = new PrintWriter(output, true);
-        _err = new PrintWriter(errorOutput, true);
+        _line = new CommandReader(input);
+        _out = new PrintWriter(output, !batch);
+        _err = new PrintWriter(errorOutput, !batch);
         _player1 = new HumanPlayer(this, RED);
         _player2 = new AI(this, BLUE);
+        resetClocks();
     }
 
     /** Returns a readonly view of the game board.  This board remains valid
@@ -43,24 +56,28 @@ class Game {
     }
 
     /** Play a session of Jump61.  This may include multiple games,
-     *  and proceeds until the user exits.  Returns an exit code: 0 is
-     *  normal; any positive quantity indicates an error.  */
+     *  and proceeds until the user exits or the input ends.  Returns an
+     *  exit code: 0 is normal; any positive quantity indicates an
+     *  error.  */
     int play() {
         _out.println("Welcome to " + Defaults.VERSION);
-        while (!_playing) {
-            promptForNext();
+        while (promptForNext()) {
             readExecuteCommand();
         }
-        startGame();
         _out.flush();
+        _err.flush();
         return 0;
     }
 
     /** Get a move from my input and place its row and column in
      *  MOVE.  Returns true if this is successful, false if game stops
-     *  or ends first. */
+     *  or ends first.  The game stops if the input ends. */
     boolean getMove(int[] move) {
-        while (_playing && _move[0] == 0 && promptForNext()) {
+        while (_playing && _move[0] == 0) {
+            if (!promptForNext()) {
+                _playing = false;
+                break;
+            }
             readExecuteCommand();
         }
         if (_move[0] > 0) {
@@ -82,11 +99,89 @@ class Game {
     void makeMove(int n) {
         if (_board.isLegal(_board.whoseMove(), n)) {
             _board.addSpot(_board.whoseMove(), n);
+            if (_record != null) {
+                long millis = System.currentTimeMillis() - _turnStart;
+                if (_searched) {
+                    _record.add(n, _searchValue, _searchStats.depth(),
+                                _searchStats.nodes(), millis);
+                } else {
+                    _record.add(n);
+                }
+            }
+            _searched = false;
         } else {
             _err.println("This is not a legal move. Please try again");
         }
     }
 
+    /** Return the number of milliseconds an automated PLAYER may spend
+     *  choosing its next move, or 0 if it is not limited.  This is the
+     *  per-move time, if set, or less if PLAYER's share of its remaining
+     *  game clock is smaller. */
+    long timeForMove(Color player) {
+        long budget = _moveTime;
+        if (_gameTime > 0) {
+            long share =
+                Math.max(1, _clock[player.ordinal()] / MOVES_TO_GO);
+            budget = budget == 0 ? share : Math.min(budget, share);
+        }
+        return budget;
+    }
+
+    /** Return the number of threads an automated player may use to
+     *  search for a move. */
+    int searchThreads() {
+        return _threads;
+    }
+
+    /** Return true iff automated players should split their searches
+     *  deterministically among their threads, rather than share a
+     *  transposition table among independent searches. */
+    boolean splitSearch() {
+        return _splitSearch;
+    }
+
+    /** Play a game to its end from the current position between
+     *  automated players, player 1 using ENGINE1 and player 2 ENGINE2
+     *  (named as for the auto command), and return the winner.  Player 1
+     *  must be the one to move. */
+    Color playAutomated(String engine1, String engine2) {
+        setAuto(1, engine1);
+        setAuto(2, engine2);
+        startGame();
+        return _board.getWinner();
+    }
+
+    /** Return true iff automated players should ponder (search on their
+     *  opponents' time). */
+    boolean ponder() {
+        return _ponder;
+    }
+
+    /** Return the opening book automated players consult, or null if
+     *  there is none. */
+    OpeningBook openingBook() {
+        return _book;
+    }
+
+    /** Return the endgame tablebase automated players consult for N x N
+     *  boards, or null if there is none. */
+    Tablebase tablebase(int N) {
+        return N < _tablebases.length ? _tablebases[N] : null;
+    }
+
+    /** Note that the next move is the result of a search that valued
+     *  it at VALUE, with statistics STATS, for the game record and the
+     *  stats command, and print them if asked to after each search. */
+    void noteSearch(int value, SearchStats stats) {
+        _searched = true;
+        _searchValue = value;
+        _searchStats = stats;
+        if (_showStats) {
+            printStats();
+        }
+    }
+
     /** Return a random integer in the range [0 .. N), uniformly
      *  distributed.  Requires N > 0. */
     int randInt(int n) {
@@ -113,14 +208,31 @@ class Game {
         _out.printf("%s wins.\n", getBoard().getWinner().toCapitalizedString());
     }
 
-    /** Make player #PLAYER (1 or 2) an AI for subsequent moves. */
-    private void setAuto(int player) {
+    /** Make player #PLAYER (1 or 2) an AI for subsequent moves, using
+     *  the engine named ENGINE: "minmax" for the searching AI or "mcts"
+     *  for the Monte Carlo tree search AI. */
+    private void setAuto(int player, String engine) {
         if (player != 1 && player != 2) {
             throw error("Player number must be either 1 or 2");
-        } else if (player == 1) {
-            _player1 = new AI(this, _player1.getColor());
+        }
+        Color color = (player == 1 ? _player1 : _player2).getColor();
+        Player auto;
+        switch (engine) {
+        case "minmax":
+            auto = new AI(this, color);
+            break;
+        case "mcts":
+            auto = new MonteCarloAI(this, color);
+            break;
+        default:
+            throw error("unknown engine: '%s'", engine);
+        }
+        if (player == 1) {
+            _player1.stopGame();
+            _player1 = auto;
         } else {
-            _player2 = new AI(this, _player2.getColor());
+            _player2.stopGame();
+            _player2 = auto;
         }
     }
 
@@ -130,8 +242,10 @@ class Game {
         if (player != 1 && player != 2) {
             throw error("Player number must be either 1 or 2");
         } else if (player == 1) {
+            _player1.stopGame();
             _player1 = new HumanPlayer(this, _player1.getColor());
         } else {
+            _player2.stopGame();
             _player2 = new HumanPlayer(this, _player2.getColor());
         }
     }
@@ -144,7 +258,8 @@ class Game {
      *  state. */
     private void clear() {
         _playing = false;
-        _board.clear(_board.size());
+        clearBoard(_board.size());
+        resetClocks();
     }
 
     /** Print the current board using standard board-dump format. */
@@ -166,6 +281,30 @@ class Game {
     /** Seed the random-number generator with SEED. */
     private void setSeed(long seed) {
         _random.setSeed(seed);
+        _seed = seed;
+    }
+
+    /** Append a record of each game played from now on (see GameRecord)
+     *  to the file named NAME, or stop recording games if NAME is
+     *  "none". */
+    private void setRecordFile(String name) {
+        _recordPath = name.equals("none") ? null : Paths.get(name);
+    }
+
+    /** Append the record of the game just played, if any, to the record
+     *  file. */
+    private void saveRecord() {
+        if (_record == null) {
+            return;
+        }
+        _record.setWinner(_board.won() ? _board.getWinner() : WHITE);
+        try {
+            _record.append(_recordPath, GameRecord.CHECKPOINT_INTERVAL);
+        } catch (IOException excp) {
+            _err.printf("cannot write %s: %s%n", _recordPath,
+                        excp.getMessage());
+        }
+        _record = null;
     }
 
     /** Place SPOTS spots on square R:C and color the square red or
@@ -174,6 +313,12 @@ class Game {
      *  the number of neighbors of square R, C. */
     private void setSpots(int r, int c, int spots, String color) {
         _playing = false;
+        if (!_board.exists(r, c)) {
+            throw error("square %d %d out of bounds", r, c);
+        }
+        if (spots < 0 || spots > _board.neighbors(r, c)) {
+            throw error("square %d %d cannot hold %d spots", r, c, spots);
+        }
         if (color.equals("r")) {
             _board.set(r, c, spots, RED);
         } else if (color.equals("b")) {
@@ -187,23 +332,213 @@ class Game {
      *  with numMoves() == 0.  */
     private void setSize(int n) {
         _playing = false;
-        _board.clear(n);
+        clearBoard(n);
+        resetClocks();
+    }
+
+    /** Clear the board to an empty N x N board with numMoves() == 0,
+     *  held in a SparseBoard if N is at least SparseBoard.MIN_SIZE, and
+     *  otherwise in a MutableBoard.  getBoard() views the new board. */
+    private void clearBoard(int N) {
+        boolean sparse = N >= SparseBoard.MIN_SIZE;
+        if (sparse == _board instanceof SparseBoard) {
+            _board.clear(N);
+        } else {
+            _board = sparse ? new SparseBoard(N) : new MutableBoard(N);
+            _readonlyBoard.setBoard(_board);
+        }
+    }
+
+    /** Limit the time automated players spend on each move to MILLIS
+     *  milliseconds, or remove the limit if MILLIS is 0. */
+    private void setMoveTime(long millis) {
+        if (millis < 0) {
+            throw error("time must be non-negative");
+        }
+        _moveTime = millis;
+    }
+
+    /** Give each player a game clock of MILLIS milliseconds, from which
+     *  the time taken by each of its moves is deducted and against which
+     *  automated players budget their moves.  A MILLIS of 0 removes the
+     *  clock. */
+    private void setGameTime(long millis) {
+        if (millis < 0) {
+            throw error("time must be non-negative");
+        }
+        _gameTime = millis;
+        resetClocks();
+    }
+
+    /** Let automated players search with N threads. */
+    private void setThreads(int n) {
+        if (n < 1 || n > MAX_THREADS) {
+            throw error("number of threads must be between 1 and %d",
+                        MAX_THREADS);
+        }
+        _threads = n;
+        _threadsSet = true;
+    }
+
+    /** Let automated players ponder iff MODE is "on" (and not if it is
+     *  "off"). */
+    private void setPonder(String mode) {
+        switch (mode) {
+        case "on":
+            _ponder = true;
+            break;
+        case "off":
+            _ponder = false;
+            break;
+        default:
+            throw error("ponder setting must be on or off");
+        }
+    }
+
+    /** Set the parallel search MODE of automated players: "smp" for
+     *  independent searches sharing a transposition table, or "split"
+     *  for a deterministic division of the root moves. */
+    private void setParallelMode(String mode) {
+        switch (mode) {
+        case "smp":
+            _splitSearch = false;
+            break;
+        case "split":
+            _splitSearch = true;
+            break;
+        default:
+            throw error("parallel mode must be either smp or split");
+        }
+    }
+
+    /** Have automated players take their moves from the opening book in
+     *  the file named NAME while it has moves for the position, or from
+     *  no book if NAME is "none". */
+    private void setBook(String name) {
+        if (name.equals("none")) {
+            _book = null;
+            return;
+        }
+        try {
+            _book = OpeningBook.open(name);
+        } catch (IOException excp) {
+            throw error("cannot open book %s: %s", name, excp.getMessage());
+        }
+    }
+
+    /** Have automated players consult the endgame tablebase in the
+     *  file named NAME for boards of its size, or no tablebases if NAME
+     *  is "none". */
+    private void setTablebase(String name) {
+        if (name.equals("none")) {
+            Arrays.fill(_tablebases, null);
+            return;
+        }
+        try {
+            Tablebase table = Tablebase.open(name);
+            _tablebases[table.size()] = table;
+        } catch (IOException excp) {
+            throw error("cannot open tablebase %s: %s", name,
+                        excp.getMessage());
+        }
+    }
+
+    /** Act on the stats command with argument MODE: print the
+     *  statistics of the last search if MODE is null, and print them
+     *  after each search from now on iff MODE is on. */
+    private void setStats(String mode) {
+        if (mode == null) {
+            if (_searchStats == null) {
+                throw error("no search yet");
+            }
+            printStats();
+            return;
+        }
+        switch (mode) {
+        case "on":
+            _showStats = true;
+            break;
+        case "off":
+            _showStats = false;
+            break;
+        default:
+            throw error("stats setting must be on or off");
+        }
+    }
+
+    /** Print the value and statistics of the last search. */
+    private void printStats() {
+        _out.printf("info value %d %s\n", _searchValue,
+                    _searchStats.summary());
+    }
+
+    /** Count the move sequences of length DEPTH from the current
+     *  position (see Perft) with the number of threads set for the AI,
+     *  or with one per processor if none has been set, printing the
+     *  count below each first move, then the totals and the speed. */
+    private void perft(int depth) {
+        if (depth < 1) {
+            throw error("depth must be positive");
+        }
+        Board b = Board.mutableCopy(null, _board);
+        int threads = _threadsSet ? _threads
+            : Math.min(Runtime.getRuntime().availableProcessors(),
+                       MAX_THREADS);
+        Perft perft = new Perft(threads);
+        long start = System.nanoTime();
+        long[] counts = perft.divide(b, depth);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        long total = b.won() ? 1 : 0;
+        for (int n = 0; n < counts.length; n += 1) {
+            if (counts[n] >= 0) {
+                _out.printf("%d %d: %d\n", b.row(n), b.col(n), counts[n]);
+                total += counts[n];
+            }
+        }
+        long nodes = perft.nodes();
+        _out.printf("%d leaves, %d moves in %d ms (%d moves/s)\n",
+                    total, nodes, elapsed / 1000000,
+                    (long) (nodes * 1e9 / elapsed));
+    }
+
+    /** Restore both players' game clocks to their full time. */
+    private void resetClocks() {
+        Arrays.fill(_clock, _gameTime);
     }
 
     /** Begin accepting moves for game.  If the game is won,
      *  immediately print a win message and end the game. */
     private void startGame() {
         _playing = true;
+        if (_recordPath != null) {
+            Player red = _player1.getColor() == RED ? _player1 : _player2,
+                blue = red == _player1 ? _player2 : _player1;
+            _record = new GameRecord(_board, red.name(), blue.name(), _seed);
+        }
         checkForWin();
         while (_playing) {
-            _player1.makeMove();
+            playTurn(_player1);
             checkForWin();
             if (!_playing) {
                 break;
             }
-            _player2.makeMove();
+            playTurn(_player2);
             checkForWin();
         }
+        _player1.stopGame();
+        _player2.stopGame();
+        saveRecord();
+    }
+
+    /** Have PLAYER make a move, charging the time taken to its game
+     *  clock. */
+    private void playTurn(Player player) {
+        long start = System.currentTimeMillis();
+        _turnStart = start;
+        player.makeMove();
+        int k = player.getColor().ordinal();
+        long used = System.currentTimeMillis() - start;
+        _clock[k] = Math.max(0, _clock[k] - used);
     }
 
     /** Save move R C in _move.  Error if R and C do not indicate an
@@ -216,25 +551,34 @@ class Game {
         _move[1] = c;
     }
 
-    /** Read and execute one command.  Leave the input at the start of
-     *  a line, if there is more input. */
+    /** Execute the command on the line last read by promptForNext. */
     private void readExecuteCommand() {
-            executeCommand(_inp.nextLine());
+        executeLine();
+    }
+
+    /** Gather arguments and execute the command in INPUT, reporting
+     *  any errors on my error output. */
+    void executeCommand(String input) {
+        _line.parse(input);
+        executeLine();
     }
 
-    /** Gather arguments and execute command CMND.  Throws GameException
-     *  on errors. */
-    private void executeCommand(String input) {
-        String[] args = input.trim().split(" ");
-        String cmnd = args[0];
+    /** Execute the command on the current line of _line, reporting any
+     *  errors on my error output.  Moves are read without creating
+     *  objects. */
+    private void executeLine() {
+        CommandReader args = _line;
+        if (args.size() == 0) {
+            return;
+        }
+        boolean isMove = _playing && args.isNumber(0);
+        String cmnd = isMove ? null : args.get(0);
         try {
-            if (cmnd.matches("\\d+") && _playing) {
-               saveMove(Integer.parseInt(cmnd), Integer.parseInt(args[1]));
-               return;
+            if (isMove) {
+                saveMove(args.getInt(0), args.getInt(1));
+                return;
             }
             switch (cmnd) {
-            case "\n": case "\r\n": case "":
-                return;
             case "#": //Get this to work without a space. 
                 break;
             case "clear":
@@ -249,25 +593,57 @@ class Game {
                 System.exit(0);
                 break;
             case "auto":
-                setAuto(Integer.parseInt(args[1]));
+                setAuto(args.getInt(1), args.size() > 2 ? args.get(2)
+                        : "minmax");
                 break;
             case "manual":
-                setManual(Integer.parseInt(args[1]));
+                setManual(args.getInt(1));
                 break;
             case "size":
-                setSize(Integer.parseInt(args[1]));
+                setSize(args.getInt(1));
                 break;
             case "move":
-                setMoveNumber(Integer.parseInt(args[1]));
+                setMoveNumber(args.getInt(1));
+                break;
+            case "movetime":
+                setMoveTime(args.getLong(1));
+                break;
+            case "gametime":
+                setGameTime(args.getLong(1));
+                break;
+            case "threads":
+                setThreads(args.getInt(1));
+                break;
+            case "parallel":
+                setParallelMode(args.get(1));
+                break;
+            case "ponder":
+                setPonder(args.get(1));
+                break;
+            case "book":
+                setBook(args.get(1));
+                break;
+            case "tablebase":
+                setTablebase(args.get(1));
+                break;
+            case "record":
+                setRecordFile(args.get(1));
+                break;
+            case "stats":
+                setStats(args.size() > 1 ? args.get(1) : null);
+                break;
+            case "perft":
+                perft(args.getInt(1));
                 break;
             case "set":
-                setSpots(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
-                    Integer.parseInt(args[3]), (args[4]));
+                setSpots(args.getInt(1), args.getInt(2), args.getInt(3),
+                         args.get(4));
                 break;
             case "dump":
                 dump();
                 break;
             case "seed":
+                setSeed(args.getLong(1));
                 break;
             case "help":
                 help();
@@ -277,7 +653,7 @@ class Game {
             }
         } catch (NumberFormatException e) {
             _err.printf("Invalid arguments for command '%s'. "
-                    + "Please try again.\n", cmnd);
+                    + "Please try again.\n", isMove ? args.get(0) : cmnd);
         } catch (GameException e) {
             _err.println(e.getMessage());
         } catch (ArrayIndexOutOfBoundsException e) {
@@ -285,18 +661,17 @@ class Game {
         }
     }
 
-    /** Print a prompt and wait for input. Returns true iff there is another
-     *  token. */
+    /** Print a prompt, unless playing a script, and read the next line
+     *  of input.  Returns true iff there is another line. */
     private boolean promptForNext() {
-        if (_playing) {
-            _prompter.printf("%s>", _board.whoseMove());
-        } else {
-            _prompter.printf(">");
+        if (!_batch) {
+            if (_playing) {
+                _prompter.printf("%s>", _board.whoseMove());
+            } else {
+                _prompter.printf(">");
+            }
         }
-        //consider the following:
-        //_out.flush();
-        //return _inp.hasNext();
-        return _inp.hasNext();
+        return _line.next();
     }
 
     /** Send an error message to the user formed from arguments FORMAT
@@ -309,18 +684,19 @@ class Game {
 
     /** Writer on which to print prompts for input. */
     private final PrintWriter _prompter;
-    /** Scanner from current game input.  Initialized to return
-     *  newlines as tokens. */
-    private final Scanner _inp;
+    /** Lines of current game input, split into tokens. */
+    private final CommandReader _line;
+    /** True iff playing a script, without prompts or eager flushing. */
+    private final boolean _batch;
     /** Outlet for responses to the user. */
     private final PrintWriter _out;
     /** Outlet for error responses to the user. */
     private final PrintWriter _err;
 
     /** The board on which I record all moves. */
-    final Board _board; //Change back to private
+    private Board _board;
     /** A readonly view of _board. */
-    private final Board _readonlyBoard;
+    private final ConstantBoard _readonlyBoard;
     /** The first player in THIS. */
     private Player _player1;
     /** The second player in THIS. */
@@ -328,6 +704,57 @@ class Game {
 
     /** A pseudo-random number generator used by players as needed. */
     private final Random _random = new Random();
+    /** The last seed given to _random (null if none). */
+    private Long _seed;
+
+    /** File to which game records are appended (null if none). */
+    private Path _recordPath;
+    /** Record of the game in progress (null if none). */
+    private GameRecord _record;
+    /** Value of System.currentTimeMillis() when the current turn
+     *  started. */
+    private long _turnStart;
+    /** True iff noteSearch has been called since the last move. */
+    private boolean _searched;
+    /** Value passed to the last call of noteSearch. */
+    private int _searchValue;
+    /** Statistics passed to the last call of noteSearch (null if
+     *  none). */
+    private SearchStats _searchStats;
+    /** True iff statistics are printed after each search. */
+    private boolean _showStats;
+
+    /** Estimated number of moves a player has left to make, used to
+     *  divide its game clock among them. */
+    private static final int MOVES_TO_GO = 20;
+
+    /** Largest number of search threads allowed. */
+    private static final int MAX_THREADS = 256;
+
+    /** Number of threads automated players may search with. */
+    private int _threads = Defaults.THREADS;
+    /** True iff the number of threads has been set explicitly. */
+    private boolean _threadsSet;
+    /** True iff automated players split their searches
+     *  deterministically among their threads. */
+    private boolean _splitSearch;
+    /** True iff automated players ponder. */
+    private boolean _ponder;
+    /** Opening book of automated players (null if none). */
+    private OpeningBook _book;
+    /** Endgame tablebases of automated players, indexed by board size
+     *  (null where there are none). */
+    private final Tablebase[] _tablebases =
+        new Tablebase[Tablebase.MAX_SIZE + 1];
+    /** Milliseconds an automated player may spend per move (0 if
+     *  unlimited). */
+    private long _moveTime = Defaults.MOVE_TIME;
+    /** Milliseconds on each player's game clock at the start of a game
+     *  (0 if there is no clock). */
+    private long _gameTime = Defaults.GAME_TIME;
+    /** Milliseconds remaining on each player's game clock, indexed by
+     *  the ordinal of the player's color. */
+    private final long[] _clock = new long[Color.values().length];
 
     /** True iff a game is currently in progress. */
     private boolean _playing;
@@ -0,0 +1,471 @@
+package jump61;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static jump61.Color.*;
+
+/** The record of one game: its players, its starting position and its
+ *  moves, with the search statistics of automated players' moves where
+ *  known, in a compact binary form.  Records are appended to archive
+ *  files one after another, and read back by Replay.
+ *
+ *  A record is the int MAGIC followed by the length of its body and the
+ *  body, which consists of: a byte VERSION; a byte of flags (HAS_START,
+ *  HAS_SEED); the board size; the engines playing red and blue (each a
+ *  length and UTF-8 bytes); the time the game started, in milliseconds
+ *  since the epoch; the seed of the game's random numbers, if HAS_SEED;
+ *  the number of moves made before the game started and the packed
+ *  contents of its squares (see MutableBoard.pack), if HAS_START; the
+ *  ordinal of the winner's color (that of WHITE if the game was not
+ *  finished); the checkpoint interval K and the number of moves; the
+ *  checkpoints, which are the packed squares of the positions after each
+ *  positive multiple of K moves; and the moves.  Each move is
+ *  2 * S + 1 if followed by statistics, and 2 * S otherwise, where S is
+ *  its square number; its statistics are the search value, depth and
+ *  nodes and the milliseconds taken.  All numbers are variable-length
+ *  (seven bits per byte, least significant first), signed ones after
+ *  zig-zag encoding.  A position at any ply can be reconstructed by
+ *  replaying at most K - 1 moves from a checkpoint.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class GameRecord {
+
+    /** A record of a game starting from the position on START, between
+     *  the engines named RED and BLUE, whose random numbers were seeded
+     *  with SEED, or not explicitly seeded if SEED is null. */
+    GameRecord(Board start, String red, String blue, Long seed) {
+        _size = start.size();
+        _red = red;
+        _blue = blue;
+        _seed = seed;
+        _time = System.currentTimeMillis();
+        _startMoves = start.numMoves();
+        boolean empty = start.numOfColor(WHITE) == _size * _size;
+        _start = empty ? null : cells(start);
+    }
+
+    /** A record read from BODY, the body of a record as described
+     *  above.  Throws IOException if BODY is malformed. */
+    private GameRecord(ByteBuffer body) throws IOException {
+        try {
+            if (body.get() != VERSION) {
+                throw new IOException("unsupported game record version");
+            }
+            int flags = body.get();
+            _size = readInt(body);
+            _red = readString(body);
+            _blue = readString(body);
+            _time = readLong(body);
+            _seed = (flags & HAS_SEED) != 0 ? unzigzag(readLong(body)) : null;
+            if ((flags & HAS_START) != 0) {
+                _startMoves = readInt(body);
+                _start = new byte[_size * _size];
+                body.get(_start);
+            } else {
+                _startMoves = 0;
+                _start = null;
+            }
+            _winner = COLORS[body.get()];
+            _interval = readInt(body);
+            int count = readInt(body);
+            if (_interval > 0) {
+                _checkpoints = new byte[count / _interval][_size * _size];
+                for (byte[] checkpoint : _checkpoints) {
+                    body.get(checkpoint);
+                }
+            }
+            for (int k = 0; k < count; k += 1) {
+                int entry = readInt(body);
+                if (entry >> 1 >= (long) _size * _size) {
+                    throw new IOException("malformed game record");
+                }
+                if ((entry & 1) == 0) {
+                    add(entry >> 1);
+                } else {
+                    add(entry >> 1, unzigzag(readLong(body)),
+                        readInt(body), readLong(body), readLong(body));
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw new IOException("malformed game record");
+        }
+    }
+
+    /** Add a move to square #MOVE, without statistics. */
+    void add(int move) {
+        grow();
+        _moves[_count] = move << 1;
+        _count += 1;
+    }
+
+    /** Add a move to square #MOVE, found by a search to depth DEPTH of
+     *  NODES nodes that valued it at VALUE and took MILLIS
+     *  milliseconds. */
+    void add(int move, long value, int depth, long nodes, long millis) {
+        grow();
+        _moves[_count] = move << 1 | 1;
+        _values[_count] = value;
+        _depths[_count] = depth;
+        _nodes[_count] = nodes;
+        _millis[_count] = millis;
+        _count += 1;
+    }
+
+    /** Record that the game was won by WINNER, or unfinished if WINNER is
+     *  WHITE. */
+    void setWinner(Color winner) {
+        _winner = winner;
+    }
+
+    /** Returns the board size. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns the engine that played COLOR (RED or BLUE). */
+    String engine(Color color) {
+        return color == RED ? _red : _blue;
+    }
+
+    /** Returns the winner, or WHITE if the game was not finished. */
+    Color winner() {
+        return _winner;
+    }
+
+    /** Returns the seed of the game's random numbers, or null if they
+     *  were not explicitly seeded. */
+    Long seed() {
+        return _seed;
+    }
+
+    /** Returns the time at which the game started, in milliseconds since
+     *  the epoch. */
+    long time() {
+        return _time;
+    }
+
+    /** Returns the number of moves recorded. */
+    int numMoves() {
+        return _count;
+    }
+
+    /** Returns the square of move #K (numbered from 0). */
+    int move(int k) {
+        return _moves[k] >> 1;
+    }
+
+    /** Returns true iff move #K has search statistics. */
+    boolean hasStats(int k) {
+        return (_moves[k] & 1) != 0;
+    }
+
+    /** Returns the search value of move #K. */
+    long value(int k) {
+        return _values[k];
+    }
+
+    /** Returns the search depth of move #K. */
+    int depth(int k) {
+        return _depths[k];
+    }
+
+    /** Returns the number of nodes searched for move #K. */
+    long nodes(int k) {
+        return _nodes[k];
+    }
+
+    /** Returns the milliseconds taken by move #K. */
+    long millis(int k) {
+        return _millis[k];
+    }
+
+    /** Set B to the position after the first PLY recorded moves, where
+     *  0 <= PLY <= numMoves(), starting from the nearest checkpoint. */
+    void position(int ply, MutableBoard b) {
+        assert 0 <= ply && ply <= _count;
+        int k = _checkpoints == null ? 0
+            : Math.min(ply / _interval, _checkpoints.length);
+        if (k == 0) {
+            setCells(b, _start, _startMoves);
+        } else {
+            setCells(b, _checkpoints[k - 1], _startMoves + k * _interval);
+        }
+        for (int m = k == 0 ? 0 : k * _interval; m < ply; m += 1) {
+            b.addSpot(b.whoseMove(), move(m));
+        }
+    }
+
+    /** Returns the encoded form of this record, with a checkpoint every
+     *  INTERVAL > 0 moves. */
+    byte[] encode(int interval) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(VERSION);
+        body.write((_start != null ? HAS_START : 0)
+                   | (_seed != null ? HAS_SEED : 0));
+        writeLong(body, _size);
+        writeString(body, _red);
+        writeString(body, _blue);
+        writeLong(body, _time);
+        if (_seed != null) {
+            writeLong(body, zigzag(_seed));
+        }
+        if (_start != null) {
+            writeLong(body, _startMoves);
+            body.write(_start, 0, _start.length);
+        }
+        body.write(_winner.ordinal());
+        writeLong(body, interval);
+        writeLong(body, _count);
+        MutableBoard b = new MutableBoard(_size);
+        setCells(b, _start, _startMoves);
+        for (int k = 0; k < _count; k += 1) {
+            b.addSpot(b.whoseMove(), move(k));
+            if ((k + 1) % interval == 0) {
+                byte[] cells = cells(b);
+                body.write(cells, 0, cells.length);
+            }
+        }
+        for (int k = 0; k < _count; k += 1) {
+            writeLong(body, _moves[k]);
+            if (hasStats(k)) {
+                writeLong(body, zigzag(_values[k]));
+                writeLong(body, _depths[k]);
+                writeLong(body, _nodes[k]);
+                writeLong(body, _millis[k]);
+            }
+        }
+        ByteArrayOutputStream result =
+            new ByteArrayOutputStream(body.size() + 2 * Integer.BYTES);
+        result.write(MAGIC >>> 24);
+        result.write(MAGIC >>> 16);
+        result.write(MAGIC >>> 8);
+        result.write(MAGIC);
+        writeLong(result, body.size());
+        result.write(body.toByteArray(), 0, body.size());
+        return result.toByteArray();
+    }
+
+    /** Append this record, with a checkpoint every INTERVAL > 0 moves, to
+     *  the archive file at PATH, creating it if necessary.  Records
+     *  appended by concurrent games in this process do not interleave. */
+    void append(Path path, int interval) throws IOException {
+        byte[] bytes = encode(interval);
+        synchronized (GameRecord.class) {
+            Files.write(path, bytes, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+        }
+    }
+
+    /** Returns the next record from IN, or null if IN is at its end.
+     *  Throws IOException if IN does not hold a well-formed record. */
+    static GameRecord read(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new GameRecord(ByteBuffer.wrap(body));
+    }
+
+    /** Skip the next record in IN without decoding it.  Returns false if
+     *  IN is at its end. */
+    static boolean skip(DataInputStream in) throws IOException {
+        int length = readLength(in);
+        if (length < 0) {
+            return false;
+        }
+        in.skipNBytes(length);
+        return true;
+    }
+
+    /** Read the magic number and body length of a record from IN, and
+     *  return the length, or -1 if IN is at its end. */
+    private static int readLength(DataInputStream in) throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException excp) {
+            return -1;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("not a game record");
+        }
+        long length;
+        int shift;
+        length = shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            length |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < Long.SIZE);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("malformed game record");
+        }
+        return (int) length;
+    }
+
+    /** Set B to the position on which the squares have the packed
+     *  contents CELLS (all empty if CELLS is null), after MOVES moves. */
+    private void setCells(MutableBoard b, byte[] cells, int moves) {
+        b.clear(_size);
+        if (cells != null) {
+            for (int n = 0; n < cells.length; n += 1) {
+                int spots = cells[n] >> MutableBoard.COLOR_BITS;
+                if (spots > 0) {
+                    b.set(n, spots,
+                          COLORS[cells[n] & MutableBoard.COLOR_MASK]);
+                }
+            }
+        }
+        if (moves > 0) {
+            b.setMoves(moves);
+        }
+    }
+
+    /** Returns the packed contents of the squares of B. */
+    private static byte[] cells(Board b) {
+        byte[] cells = new byte[b.size() * b.size()];
+        for (int n = 0; n < cells.length; n += 1) {
+            cells[n] = MutableBoard.pack(b.spots(n), b.color(n));
+        }
+        return cells;
+    }
+
+    /** Make room for another move. */
+    private void grow() {
+        if (_count == _moves.length) {
+            int size = Math.max(INITIAL_MOVES, 2 * _count);
+            _moves = Arrays.copyOf(_moves, size);
+            _values = Arrays.copyOf(_values, size);
+            _depths = Arrays.copyOf(_depths, size);
+            _nodes = Arrays.copyOf(_nodes, size);
+            _millis = Arrays.copyOf(_millis, size);
+        }
+    }
+
+    /** Write X >= 0 to OUT in variable-length form. */
+    private static void writeLong(ByteArrayOutputStream out, long x) {
+        while ((x & ~0x7fL) != 0) {
+            out.write((int) (x & 0x7f) | 0x80);
+            x >>>= 7;
+        }
+        out.write((int) x);
+    }
+
+    /** Write S to OUT as its length and UTF-8 bytes. */
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** Returns the next variable-length number from IN. */
+    private static long readLong(ByteBuffer in) throws IOException {
+        long x;
+        int shift;
+        x = shift = 0;
+        byte b;
+        do {
+            if (shift >= Long.SIZE) {
+                throw new IOException("malformed game record");
+            }
+            b = in.get();
+            x |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return x;
+    }
+
+    /** Returns the next variable-length number from IN, which must fit
+     *  in an int. */
+    private static int readInt(ByteBuffer in) throws IOException {
+        long x = readLong(in);
+        if (x < 0 || x > Integer.MAX_VALUE) {
+            throw new IOException("malformed game record");
+        }
+        return (int) x;
+    }
+
+    /** Returns the next string from IN, as written by writeString. */
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[readInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns X with its sign moved to its low-order bit, so that
+     *  numbers of small magnitude have short variable-length forms. */
+    private static long zigzag(long x) {
+        return x << 1 ^ x >> (Long.SIZE - 1);
+    }
+
+    /** Returns the inverse of zigzag(X). */
+    private static long unzigzag(long x) {
+        return x >>> 1 ^ -(x & 1);
+    }
+
+    /** Number of moves between the checkpoints of records written by
+     *  games. */
+    static final int CHECKPOINT_INTERVAL = 32;
+
+    /** First int of every record ("J61G"). */
+    private static final int MAGIC = 0x4A363147;
+    /** Format version of the records written. */
+    private static final byte VERSION = 1;
+    /** Flag marking a record that starts from a non-empty board. */
+    private static final int HAS_START = 1;
+    /** Flag marking a record of a game with seeded random numbers. */
+    private static final int HAS_SEED = 2;
+    /** Initial capacity for moves. */
+    private static final int INITIAL_MOVES = 64;
+    /** Colors indexed by ordinal. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Board size. */
+    private final int _size;
+    /** Engines playing red and blue. */
+    private final String _red, _blue;
+    /** Seed of the game's random numbers (null if not seeded). */
+    private final Long _seed;
+    /** Starting time of the game, in milliseconds since the epoch. */
+    private final long _time;
+    /** Number of moves made before the game started. */
+    private final int _startMoves;
+    /** Packed squares of the starting position (null if empty). */
+    private final byte[] _start;
+    /** The winner (WHITE if none). */
+    private Color _winner = WHITE;
+    /** Number of moves between checkpoints of a record read (0 if
+     *  none). */
+    private int _interval;
+    /** Packed squares of the positions after each positive multiple of
+     *  _interval moves (null if none). */
+    private byte[][] _checkpoints;
+    /** Moves, each 2 * square + 1 if it has statistics, 2 * square
+     *  otherwise. */
+    private int[] _moves = new int[0];
+    /** Search values of moves. */
+    private long[] _values = new long[0];
+    /** Search depths of moves. */
+    private int[] _depths = new int[0];
+    /** Node counts of moves. */
+    private long[] _nodes = new long[0];
+    /** Milliseconds taken by moves. */
+    private long[] _millis = new long[0];
+    /** Number of moves. */
+    private int _count;
+
+}
@@ -0,0 +1,93 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of game records.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class GameRecordTest extends TestCase {
+
+    @Test
+    public void testGameRecord() throws IOException {
+        Random random = new Random(18);
+        MutableBoard B = new MutableBoard(5);
+        B.set(3, 3, 2, BLUE);
+        B.setMoves(1);
+        GameRecord record = new GameRecord(B, "manual", "minmax", 61L);
+        ArrayList<String> positions = new ArrayList<>();
+        positions.add(B.toString());
+        while (!B.won()) {
+            Color player = B.whoseMove();
+            int n;
+            do {
+                n = random.nextInt(25);
+            } while (!B.isLegal(player, n));
+            B.addSpot(player, n);
+            if (player == RED) {
+                record.add(n);
+            } else {
+                record.add(n, -B.numMoves(), 4, 1L << 40, 7);
+            }
+            positions.add(B.toString());
+        }
+        record.setWinner(B.getWinner());
+        byte[] bytes = record.encode(7);
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(concat(bytes, bytes)));
+        assertTrue("record not skipped", GameRecord.skip(in));
+        GameRecord copy = GameRecord.read(in);
+        assertNull("extra record", GameRecord.read(in));
+        assertEquals("wrong seed", 61L, (long) copy.seed());
+        assertEquals("wrong engine", "minmax", copy.engine(BLUE));
+        assertEquals("wrong winner", B.getWinner(), copy.winner());
+        assertEquals("wrong length", positions.size() - 1, copy.numMoves());
+        MutableBoard D = new MutableBoard(2);
+        for (int ply = positions.size() - 1; ply >= 0; ply -= 1) {
+            copy.position(ply, D);
+            assertEquals("wrong position", positions.get(ply), D.toString());
+            if (ply > 0) {
+                assertEquals("wrong move", record.move(ply - 1),
+                             copy.move(ply - 1));
+                assertEquals("wrong stats", record.hasStats(ply - 1),
+                             copy.hasStats(ply - 1));
+                assertEquals("wrong value", record.value(ply - 1),
+                             copy.value(ply - 1));
+                assertEquals("wrong nodes", record.nodes(ply - 1),
+                             copy.nodes(ply - 1));
+            }
+        }
+        GameRecord bad = new GameRecord(new MutableBoard(5), "manual",
+                                        "manual", null);
+        bad.add(24);
+        bytes = bad.encode(7);
+        bytes[bytes.length - 1] = 2 * 25;
+        boolean rejected;
+        rejected = false;
+        try {
+            GameRecord.read(new DataInputStream(
+                new ByteArrayInputStream(bytes)));
+        } catch (IOException excp) {
+            rejected = excp.getMessage().equals("malformed game record");
+        }
+        assertTrue("move off the board accepted", rejected);
+    }
+
+    /** Returns the concatenation of A and B. */
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+}
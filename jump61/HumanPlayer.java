@@ -14,10 +14,17 @@ class HumanPlayer extends Player {
     @Override
     void makeMove() {
         Game game = getGame();
-        int[] move = new int[2];
-        if (game.getMove(move)) {
-            game.makeMove(move[0], move[1]);
+        if (game.getMove(_move)) {
+            game.makeMove(_move[0], _move[1]);
         }
     }
 
+    @Override
+    String name() {
+        return "manual";
+    }
+
+    /** The row and column of the move being read. */
+    private final int[] _move = new int[2];
+
 }
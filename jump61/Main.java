@@ -1,12 +1,16 @@
 package jump61;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.io.IOException;
+import java.util.Arrays;
 
 /** The jump61 game.
  * @author Iskander Rakhmanberdiyev
@@ -16,16 +20,92 @@ public class Main {
     /** Location of usage message resource. */
     static final String USAGE = "jump61/Usage.txt";
 
+    /** Pattern matching the first arguments that select a mode other
+     *  than interactive play. */
+    private static final String MODES =
+        "--(tournament|book|tablebase|batch|replay|engine)";
+
+    /** Size of the output buffers in batch mode. */
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+
     /** Play jump61.  ARGS0 may consist of the single string
-     *  '--display' to indicate that the game is played using a GUI. Prints
-     *  a usage message if the arguments are wrong. */
+     *  '--display' to indicate that the game is played using a GUI, of
+     *  '--tournament' followed by options for a headless match between
+     *  engines (see Tournament), of '--book' followed by options for
+     *  generating an opening book (see BookMaker), of '--tablebase'
+     *  followed by options for generating endgame tablebases (see
+     *  TablebaseMaker), of '--batch' and an optional script file to
+     *  play without prompts (the standard input by default), or of
+     *  '--replay' followed by an archive of game records and options
+     *  (see Replay), or of '--engine' followed by options for serving
+     *  analysis requests from other programs (see Engine).  Prints a
+     *  usage message if the arguments are wrong. */
     public static void main(String[] args0) {
+        if (args0.length > 0 && args0[0].matches(MODES)) {
+            String[] options = Arrays.copyOfRange(args0, 1, args0.length);
+            int code;
+            switch (args0[0]) {
+            case "--batch":
+                code = playBatch(options);
+                break;
+            case "--tournament":
+                code = Tournament.run(options);
+                break;
+            case "--book":
+                code = BookMaker.run(options);
+                break;
+            case "--tablebase":
+                code = TablebaseMaker.run(options);
+                break;
+            case "--replay":
+                code = Replay.run(options);
+                break;
+            case "--engine":
+                code = Engine.run(options);
+                break;
+            default:
+                code = 1;
+                break;
+            }
+            if (code != 0) {
+                usage();
+            }
+            System.exit(code);
+        }
         Writer output = new OutputStreamWriter(System.out);
         Game game = new Game(new InputStreamReader(System.in),output, output,
                              new OutputStreamWriter(System.err));
         System.exit(game.play());
     }
 
+    /** Play a session from the script in the file named by the only
+     *  element of OPTIONS, or from the standard input if OPTIONS is
+     *  empty, without prompts and with buffered output.  Returns an exit
+     *  code: 0 normally, and 1 for errors. */
+    private static int playBatch(String[] options) {
+        Reader input;
+        if (options.length > 1) {
+            return 1;
+        } else if (options.length == 1) {
+            try {
+                input = new FileReader(options[0]);
+            } catch (IOException excp) {
+                System.err.printf("cannot read %s: %s%n", options[0],
+                                  excp.getMessage());
+                return 1;
+            }
+        } else {
+            input = new InputStreamReader(System.in);
+        }
+        Writer output = new BufferedWriter(
+            new OutputStreamWriter(System.out), BATCH_BUFFER_SIZE);
+        Writer errors = new BufferedWriter(
+            new OutputStreamWriter(System.err), BATCH_BUFFER_SIZE);
+        Game game = new Game(input, Writer.nullWriter(), output, errors,
+                             true);
+        return game.play();
+    }
+
     /** Print the contents of the resource named NAME on OUT.
      *  NAME will typically be a file name based in one of the directories
      *  in the class path.  */
@@ -0,0 +1,398 @@
+package jump61;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** An automated Player that chooses moves by Monte Carlo tree search.
+ *  Each playout descends the search tree choosing children by the UCT
+ *  rule, expands the node it reaches if it has been visited before, and
+ *  finishes the game with random moves on a scratch board; the winner is
+ *  then credited along the path.  The move finally chosen is the
+ *  most-visited child of the root.
+ *
+ *  The tree below the position reached after my move and my opponent's
+ *  reply is kept for my next move.  With more than one search thread,
+ *  several threads run playouts on the same tree at once; a node being
+ *  explored by one thread counts as a (virtual) loss for the others
+ *  until its playout finishes, which spreads them over different lines.
+ *  @author Iskander Rakhmanberdiyev
+ */
+class MonteCarloAI extends Player {
+
+    /** A new player of GAME initially playing COLOR that chooses
+     *  moves by Monte Carlo tree search. */
+    MonteCarloAI(Game game, Color color) {
+        super(game, color);
+        _rootBoard = Board.mutableCopy(null, getBoard());
+        _seeds = new SplittableRandom(game.randInt(Integer.MAX_VALUE));
+    }
+
+    @Override
+    void makeMove() {
+        Game game = getGame();
+        Board board = getBoard();
+        _rootBoard = Board.mutableCopy(_rootBoard, board);
+        int move = findMove(_rootBoard, game.timeForMove(getColor()),
+                            Defaults.PLAYOUTS, game.searchThreads());
+        game.makeMove(move);
+        game.message("%s moves %d %d\n",
+                     getColor(), board.row(move), board.col(move));
+    }
+
+    @Override
+    String name() {
+        return "mcts";
+    }
+
+    /** Return the move chosen for the player to move on B (which must
+     *  not be won), running playouts with THREADS threads for MILLIS
+     *  milliseconds, or if MILLIS is 0, until PLAYOUTS playouts are
+     *  done.  If no playout was run, this is the lowest-numbered legal
+     *  move.  B is not modified. */
+    int findMove(Board b, long millis, int playouts, int threads) {
+        _root = reuseTree(b);
+        _root.setKey(b.key());
+        _rootBoard = Board.mutableCopy(_rootBoard, b);
+        _deadline = millis > 0 ? System.nanoTime() + millis * 1000000
+            : Long.MAX_VALUE;
+        _remaining.set(millis > 0 ? Integer.MAX_VALUE : playouts);
+
+        Future<?>[] helpers = new Future<?>[threads - 1];
+        if (helpers.length > 0) {
+            if (_pool == null) {
+                _pool = new ThreadPoolExecutor(
+                    helpers.length, helpers.length, IDLE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    r -> {
+                        Thread thread = new Thread(r, "jump61-playout");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                _pool.allowCoreThreadTimeOut(true);
+            }
+            for (int k = 0; k < helpers.length; k += 1) {
+                Worker worker = new Worker(_seeds.split());
+                helpers[k] = _pool.submit(worker::run);
+            }
+        }
+        new Worker(_seeds.split()).run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+
+        if (_root.children() == null) {
+            _root.expand(b);
+        }
+        Node best = null;
+        for (Node child : _root.children()) {
+            if (best == null || child.visits() > best.visits()) {
+                best = child;
+            }
+        }
+        _lastMove = best.move();
+        return _lastMove;
+    }
+
+    /** Return the root for a search from B: the node for B in the tree
+     *  kept from my last search, if any, detached from its parent, and
+     *  otherwise a new node. */
+    private Node reuseTree(Board b) {
+        long key = b.key();
+        if (_root != null && _root.children() != null) {
+            for (Node mine : _root.children()) {
+                if (mine.move() != _lastMove || mine.children() == null) {
+                    continue;
+                }
+                for (Node reply : mine.children()) {
+                    if (reply.key() == key && reply.keyed()) {
+                        reply.detach();
+                        return reply;
+                    }
+                }
+            }
+        }
+        return new Node(-1, b.whoseMove().opposite(), null);
+    }
+
+    /** A node of the search tree: a position, reached from its parent by
+     *  a move, with the statistics of the playouts through it.  Access
+     *  to a node's statistics and children is synchronized on the
+     *  node. */
+    private static final class Node {
+
+        /** A node reached by MOVE (-1 for a root) made by PLAYER from
+         *  PARENT. */
+        Node(int move, Color player, Node parent) {
+            _move = move;
+            _player = player;
+            _parent = parent;
+        }
+
+        /** Returns the move leading to me. */
+        int move() {
+            return _move;
+        }
+
+        /** Returns the player who made move(). */
+        Color player() {
+            return _player;
+        }
+
+        /** Returns my parent, or null if I am the root. */
+        Node parent() {
+            return _parent;
+        }
+
+        /** Make me a root. */
+        void detach() {
+            _parent = null;
+        }
+
+        /** Returns my children, or null if I have not been expanded. */
+        synchronized Node[] children() {
+            return _children;
+        }
+
+        /** Returns the number of completed playouts through me. */
+        synchronized int visits() {
+            return _visits;
+        }
+
+        /** Returns the key of my position, valid if keyed(). */
+        long key() {
+            return _key;
+        }
+
+        /** Returns true iff my key has been recorded. */
+        boolean keyed() {
+            return _keyed;
+        }
+
+        /** Record KEY as the key of my position. */
+        void setKey(long key) {
+            _key = key;
+            _keyed = true;
+        }
+
+        /** Create my children, one for each legal move on B, which
+         *  holds my position (unless already done). */
+        synchronized void expand(Board b) {
+            if (_children != null) {
+                return;
+            }
+            Color p = b.whoseMove();
+            int cells = b.size() * b.size(), count;
+            count = 0;
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(p, n)) {
+                    count += 1;
+                }
+            }
+            Node[] children = new Node[count];
+            count = 0;
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(p, n)) {
+                    children[count++] = new Node(n, p, this);
+                }
+            }
+            _children = children;
+        }
+
+        /** Return the child to explore next by the UCT rule, counting
+         *  playouts in progress as losses, and mark a playout in
+         *  progress through it.  Assumes I have been expanded. */
+        synchronized Node select() {
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(_visits + _pending + 1);
+            for (Node child : _children) {
+                double value = child.uct(logVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            best.begin();
+            return best;
+        }
+
+        /** Returns my UCT value given the logarithm LOGVISITS of my
+         *  parent's visit count. */
+        private synchronized double uct(double logVisits) {
+            int n = _visits + _pending;
+            if (n == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return _wins / n + EXPLORATION * Math.sqrt(logVisits / n);
+        }
+
+        /** Record the start of a playout through me. */
+        synchronized void begin() {
+            _pending += 1;
+        }
+
+        /** Record the end of a playout through me, which WINNER won
+         *  (null for an undecided playout).  STARTED is true iff
+         *  begin() was called for it. */
+        synchronized void finish(Color winner, boolean started) {
+            if (started) {
+                _pending -= 1;
+            }
+            _visits += 1;
+            if (winner == _player) {
+                _wins += 1;
+            } else if (winner == null) {
+                _wins += 0.5;
+            }
+        }
+
+        /** The move leading to me. */
+        private final int _move;
+        /** The player who made _move. */
+        private final Color _player;
+        /** My parent, or null. */
+        private Node _parent;
+        /** My children, or null if not yet expanded. */
+        private Node[] _children;
+        /** Number of completed playouts through me. */
+        private int _visits;
+        /** Number of playouts through me in progress. */
+        private int _pending;
+        /** Number of those playouts won by _player (draws count half). */
+        private double _wins;
+        /** The key of my position, if _keyed. */
+        private volatile long _key;
+        /** True iff _key has been set. */
+        private volatile boolean _keyed;
+    }
+
+    /** The playout loop run by each search thread, with its own scratch
+     *  board and random numbers. */
+    private class Worker {
+
+        /** A worker drawing random numbers from RANDOM. */
+        Worker(SplittableRandom random) {
+            _random = random;
+            _board = Board.mutableCopy(null, _rootBoard);
+        }
+
+        /** Run playouts until the search's time or playouts run out. */
+        void run() {
+            while (_remaining.getAndDecrement() > 0
+                   && System.nanoTime() < _deadline) {
+                playout();
+            }
+        }
+
+        /** Run one playout from the root, updating the statistics of the
+         *  nodes it passes through. */
+        private void playout() {
+            Board b = _board;
+            b.copy(_rootBoard);
+            Node node = _root;
+            Node[] children = node.children();
+            while (children != null && !b.won()) {
+                node = node.select();
+                b.addSpot(node.player(), node.move());
+                if (!node.keyed()) {
+                    node.setKey(b.key());
+                }
+                children = node.children();
+            }
+            if (!b.won() && (node == _root || node.visits() > 0)) {
+                node.expand(b);
+                node = node.select();
+                b.addSpot(node.player(), node.move());
+                node.setKey(b.key());
+            }
+            Color winner = rollout(b);
+            for (Node n = node; n != null; n = n.parent()) {
+                n.finish(winner, n != _root);
+            }
+        }
+
+        /** Play random moves on B until the game is won or a move limit
+         *  is reached, and return the winner, or null if the limit is
+         *  reached with both players holding equal numbers of squares.
+         *  At the limit, the player with more squares is the winner. */
+        private Color rollout(Board b) {
+            int cells = b.size() * b.size();
+            for (int k = ROLLOUT_LIMIT * cells; k > 0 && !b.won(); k -= 1) {
+                Color p = b.whoseMove();
+                b.addSpot(p, randomMove(b, p, cells));
+            }
+            if (b.won()) {
+                return b.color(0);
+            }
+            int red = b.numOfColor(Color.RED), blue = b.numOfColor(Color.BLUE);
+            return red > blue ? Color.RED : blue > red ? Color.BLUE : null;
+        }
+
+        /** Return a uniformly chosen legal move for P on B, which has
+         *  CELLS squares.  Tries a few random squares before falling
+         *  back to a scan from a random square. */
+        private int randomMove(Board b, Color p, int cells) {
+            for (int k = 0; k < RANDOM_PROBES; k += 1) {
+                int n = _random.nextInt(cells);
+                if (b.isLegal(p, n)) {
+                    return n;
+                }
+            }
+            int legal;
+            legal = 0;
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(p, n)) {
+                    legal += 1;
+                }
+            }
+            int choice = _random.nextInt(legal);
+            for (int n = 0; ; n += 1) {
+                if (b.isLegal(p, n)) {
+                    if (choice == 0) {
+                        return n;
+                    }
+                    choice -= 1;
+                }
+            }
+        }
+
+        /** Source of random moves. */
+        private final SplittableRandom _random;
+        /** Scratch board for playouts. */
+        private final Board _board;
+    }
+
+    /** Exploration constant of the UCT rule. */
+    private static final double EXPLORATION = 1.4;
+    /** Random squares tried before scanning for a legal move. */
+    private static final int RANDOM_PROBES = 8;
+    /** Maximum moves in a rollout, per square of the board. */
+    private static final int ROLLOUT_LIMIT = 16;
+    /** Seconds after which idle playout threads exit. */
+    private static final long IDLE_SECONDS = 60;
+
+    /** The position being searched. */
+    private Board _rootBoard;
+    /** Source of seeds for the workers' random numbers. */
+    private final SplittableRandom _seeds;
+    /** Root of the search tree. */
+    private Node _root;
+    /** The last move I chose. */
+    private int _lastMove = -1;
+    /** Number of playouts left to start. */
+    private final AtomicInteger _remaining = new AtomicInteger();
+    /** Value of System.nanoTime() at which to stop searching. */
+    private volatile long _deadline;
+    /** Threads running helper playouts (null until needed). */
+    private ThreadPoolExecutor _pool;
+
+}
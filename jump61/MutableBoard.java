@@ -1,17 +1,31 @@
 package jump61;
 
-/** A Jump61 board state.
+import java.util.Arrays;
+
+import static jump61.Color.*;
+
+/** A Jump61 board state.  The contents of each square are packed into a
+ *  single byte: the low COLOR_BITS bits hold the ordinal of its Color and
+ *  the remaining bits its number of spots.  Undo information is kept in a
+ *  journal recording the previous contents of every square each move
+ *  changes, so undoing costs time proportional to the size of the move's
+ *  cascade rather than to the size of the board.  A Zobrist key of the
+ *  position (see Zobrist) is maintained as squares change.
+ *
+ *  An index of critical squares is also kept up to date as squares
+ *  change (including in cascades and when undoing moves): for each color
+ *  the number of its critical squares and of its threats (see
+ *  numThreats), and for each square whether it is counted as a threat
+ *  and how many of its neighbors are critical.  Counting takes constant
+ *  time however large the board, and a square changing color costs
+ *  extra work only when it has a critical neighbor.
  *  @author Iskander Rakhmanberdiyev
  */
 class MutableBoard extends Board {
 
     /** An N x N board in initial configuration. */
     MutableBoard(int N) {
-        _N = N;
-        squares = new Square[_N * _N];
-        for (int i = 0; i < squares.length; i++) {
-            squares[i] = new Square();
-        }
+        resize(N);
     }
 
     /** A board whose initial contents are copied from BOARD0. Clears the
@@ -22,24 +36,55 @@ class MutableBoard extends Board {
 
     @Override
     void clear(int N) {
-        _N = N;
-        squares = new Square[_N * _N];
-        _moves = 0;
-        _prevBoard = null;
-        for (int i = 0; i < squares.length; i++) {
-            squares[i] = new Square();
+        if (_cells != null && _N == N) {
+            Arrays.fill(_cells, (byte) 0);
+            clearCounts();
+            clearIndex();
+            _key = 0;
+            _numOccupied = 0;
+        } else {
+            resize(N);
         }
+        _moves = 0;
+        clearUndo();
     }
 
     @Override
     void copy(Board board) {
-        _N = board.size();
+        int N = board.size();
+        if (_cells == null || _N != N) {
+            resize(N);
+        }
         _moves = board.numMoves();
-        squares = new Square[board.squares.length];
-        for (int i = 0; i <squares.length; i++) {
-            squares[i] = board.squares[i].clone();
+        if (board instanceof MutableBoard) {
+            MutableBoard other = (MutableBoard) board;
+            System.arraycopy(other._cells, 0, _cells, 0, _cells.length);
+            System.arraycopy(other._counts, 0, _counts, 0, _counts.length);
+            System.arraycopy(other._threat, 0, _threat, 0, _threat.length);
+            System.arraycopy(other._criticalNear, 0, _criticalNear, 0,
+                             _criticalNear.length);
+            System.arraycopy(other._critical, 0, _critical, 0,
+                             _critical.length);
+            System.arraycopy(other._threats, 0, _threats, 0,
+                             _threats.length);
+            if (_occupied.length < other._numOccupied) {
+                _occupied = new int[other._occupied.length];
+            }
+            System.arraycopy(other._occupied, 0, _occupied, 0,
+                             other._numOccupied);
+            _numOccupied = other._numOccupied;
+            _key = other._key;
+        } else {
+            Arrays.fill(_cells, (byte) 0);
+            clearCounts();
+            clearIndex();
+            _key = 0;
+            _numOccupied = 0;
+            for (int i = 0; i < _cells.length; i += 1) {
+                store(i, pack(board.spots(i), board.color(i)));
+            }
         }
-        _prevBoard = board.getPrevBoard();
+        clearUndo();
     }
 
     @Override
@@ -54,7 +99,7 @@ class MutableBoard extends Board {
 
     @Override
     int spots(int n) {
-        return squares[n].getSpots();
+        return _cells[n] >> COLOR_BITS;
     }
 
     @Override
@@ -64,7 +109,17 @@ class MutableBoard extends Board {
 
     @Override
     Color color(int n) {
-        return squares[n].getColor();
+        return COLORS[_cells[n] & COLOR_MASK];
+    }
+
+    @Override
+    int neighbors(int n) {
+        return _capacity[n];
+    }
+
+    @Override
+    Topology topology() {
+        return _topology;
     }
 
     @Override
@@ -74,15 +129,73 @@ class MutableBoard extends Board {
 
     @Override
     int numOfColor(Color color) {
-        int count = 0;
-        for (Square elem : squares) {
-            if (elem.getColor() == color) {
+        return _counts[color.ordinal()];
+    }
+
+    @Override
+    public boolean won() {
+        int cells = _cells.length;
+        return _counts[RED_BITS] == cells || _counts[BLUE_BITS] == cells;
+    }
+
+    @Override
+    long key() {
+        return (_moves & 1) == 0 ? _key : _key ^ Zobrist.SIDE;
+    }
+
+    @Override
+    void symmetricKeys(long[] keys) {
+        Arrays.fill(keys, 0, Symmetry.COUNT,
+                    (_moves & 1) == 0 ? 0 : Zobrist.SIDE);
+        Symmetry symmetry = Symmetry.forSize(_N);
+        byte[] cells = _cells;
+        int[] occupied = _occupied;
+        for (int k = 0; k < _numOccupied; k += 1) {
+            int n = occupied[k];
+            symmetry.add(keys, n, cells[n]);
+        }
+    }
+
+    @Override
+    boolean critical(int n) {
+        return _cells[n] >> COLOR_BITS == _capacity[n];
+    }
+
+    @Override
+    int numCritical(Color player) {
+        return _critical[player.ordinal()];
+    }
+
+    @Override
+    int numThreats(Color player) {
+        return _threats[player.ordinal()];
+    }
+
+    @Override
+    int neighborsOfColor(int n, Color color) {
+        return neighborsOfColor(n, color.ordinal());
+    }
+
+    /** Returns the number of neighbors of square #N whose color has
+     *  ordinal COLORBITS. */
+    private int neighborsOfColor(int n, int colorBits) {
+        byte[] cells = _cells;
+        int[] adjacent = _adjacent;
+        int count;
+        count = 0;
+        for (int k = _first[n], end = _first[n + 1]; k < end; k += 1) {
+            if ((cells[adjacent[k]] & COLOR_MASK) == colorBits) {
                 count += 1;
             }
         }
         return count;
     }
 
+    @Override
+    long jumps() {
+        return _jumps;
+    }
+
     @Override
     void addSpot(Color player, int r, int c) {
         addSpot(player, sqNum(r, c));
@@ -90,18 +203,24 @@ class MutableBoard extends Board {
 
     @Override
     void addSpot(Color player, int n) {
-        _prevBoard = new MutableBoard(this);
+        if (_numFrames == _frames.length) {
+            _frames = Arrays.copyOf(_frames, 2 * _frames.length);
+        }
+        _frames[_numFrames] = _journalSize;
+        _numFrames += 1;
         _moves++;
-        squares[n].setColor(player);
-        squares[n].addSpot();
+        _addSpot(player, n);
         jump(n);
     }
+
     /** Adds a spot  to square N for PLAYER without saving the board
      *  or jumping squares. Only used internally in JUMP. */
     private void _addSpot(Color player, int n) {
-        squares[n].setColor(player);
-        squares[n].addSpot();
+        record(n);
+        store(n, (((_cells[n] >> COLOR_BITS) + 1) << COLOR_BITS
+                  | player.ordinal()));
     }
+
     @Override
     void set(int r, int c, int num, Color player) {
         set(sqNum(r, c), num, player);
@@ -109,58 +228,366 @@ class MutableBoard extends Board {
 
     @Override
     void set(int n, int num, Color player) {
-        _prevBoard = null;
-        squares[n].setColor(player);
-        squares[n].setSpots(num);
+        assert 0 <= num && num <= MAX_SPOTS;
+        clearUndo();
+        store(n, pack(num, num == 0 ? WHITE : player));
     }
 
     @Override
     void setMoves(int num) {
         assert num > 0;
-        _prevBoard = null;
+        clearUndo();
         _moves = num;
     }
 
     @Override
     void undo() {
-        assert _prevBoard != null;
-        copy(_prevBoard);
+        assert _numFrames > 0;
+        _numFrames -= 1;
+        int start = _frames[_numFrames];
+        for (int k = _journalSize - 1; k >= start; k -= 1) {
+            int entry = _journal[k];
+            store(entry >>> JOURNAL_CELL_SHIFT, entry & 0xff);
+        }
+        _journalSize = start;
+        _moves -= 1;
+    }
+
+    /** Return true iff there is a move that undo() can take back. */
+    boolean canUndo() {
+        return _numFrames > 0;
+    }
+
+    /** Save the current contents of square #N in the undo journal before
+     *  it is modified. */
+    private void record(int n) {
+        if (_journalSize == _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journal.length);
+        }
+        _journal[_journalSize] = n << JOURNAL_CELL_SHIFT | (_cells[n] & 0xff);
+        _journalSize += 1;
+    }
+
+    /** Set the contents of square #N to the packed value CELL, keeping
+     *  the counts of squares of each color, the list of occupied squares,
+     *  the index of critical squares and the key up to date. */
+    private void store(int n, int cell) {
+        int old = _cells[n] & 0xff;
+        _counts[old & COLOR_MASK] -= 1;
+        _counts[cell & COLOR_MASK] += 1;
+        _key ^= Zobrist.square(n, old) ^ Zobrist.square(n, cell);
+        _cells[n] = (byte) cell;
+        if (old == 0) {
+            occupy(n);
+        } else if (cell == 0) {
+            vacate(n);
+        }
+        reindex(n, old, cell);
+    }
+
+    /** Add square #N, which has just been filled, to _occupied. */
+    private void occupy(int n) {
+        if (_numOccupied == _occupied.length) {
+            _occupied = Arrays.copyOf(_occupied, 2 * _occupied.length);
+        }
+        _occupied[_numOccupied] = n;
+        _numOccupied += 1;
+    }
+
+    /** Remove square #N, which has just been emptied, from _occupied.
+     *  Undo empties squares in the reverse of the order in which they
+     *  were filled, so #N is usually the last entry. */
+    private void vacate(int n) {
+        int k;
+        k = _numOccupied - 1;
+        while (_occupied[k] != n) {
+            k -= 1;
+        }
+        _numOccupied -= 1;
+        _occupied[k] = _occupied[_numOccupied];
+    }
+
+    /** Set the color counts for a board of white squares. */
+    private void clearCounts() {
+        Arrays.fill(_counts, 0);
+        _counts[WHITE_BITS] = _cells.length;
+    }
+
+    /** Set the index of critical squares for a board of white
+     *  squares. */
+    private void clearIndex() {
+        Arrays.fill(_threat, false);
+        Arrays.fill(_criticalNear, (byte) 0);
+        Arrays.fill(_critical, 0);
+        Arrays.fill(_threats, 0);
     }
-    /** True iff the square at index S is overfull. */
-    private boolean overfull(int S) {
-        return squares[S].getSpots() > neighbors(S);
+
+    /** Update the index of critical squares for a change in the packed
+     *  contents of square #N from OLD to CELL, which _cells[N] already
+     *  holds.  Most changes involve no critical square and return at
+     *  once. */
+    private void reindex(int n, int old, int cell) {
+        int capacity = _capacity[n];
+        if (old >> COLOR_BITS == capacity || cell >> COLOR_BITS == capacity
+            || ((old ^ cell) & COLOR_MASK) != 0 && _criticalNear[n] > 0) {
+            reindexCritical(n, old, cell);
+        }
+    }
+
+    /** Update the index of critical squares as for reindex, given that
+     *  square #N is or was critical or has a critical neighbor. */
+    private void reindexCritical(int n, int old, int cell) {
+        int capacity = _capacity[n];
+        boolean wasCritical = old >> COLOR_BITS == capacity,
+            critical = cell >> COLOR_BITS == capacity;
+        int oldColor = old & COLOR_MASK, color = cell & COLOR_MASK;
+        if (wasCritical) {
+            _critical[oldColor] -= 1;
+            if (_threat[n]) {
+                _threat[n] = false;
+                _threats[oldColor] -= 1;
+            }
+        }
+        if (critical) {
+            _critical[color] += 1;
+            checkThreat(n, color);
+        }
+        if (wasCritical != critical) {
+            int delta = critical ? 1 : -1;
+            for (int k = _first[n], end = _first[n + 1]; k < end; k += 1) {
+                _criticalNear[_adjacent[k]] += delta;
+            }
+        }
+        if (oldColor != color && _criticalNear[n] > 0) {
+            byte[] cells = _cells;
+            for (int k = _first[n], end = _first[n + 1]; k < end; k += 1) {
+                int m = _adjacent[k];
+                if (cells[m] >> COLOR_BITS == _capacity[m]) {
+                    checkThreat(m, cells[m] & COLOR_MASK);
+                }
+            }
+        }
+    }
+
+    /** Count critical square #N, whose color has ordinal COLORBITS, as
+     *  a threat iff it has a neighbor of the opposite color. */
+    private void checkThreat(int n, int colorBits) {
+        boolean threat = neighborsOfColor(n, colorBits ^ COLOR_MASK) > 0;
+        if (threat != _threat[n]) {
+            _threat[n] = threat;
+            _threats[colorBits] += threat ? 1 : -1;
+        }
+    }
+
+    /** Discard the undo history. */
+    private void clearUndo() {
+        _journalSize = _numFrames = 0;
     }
 
     /** Do all jumping on this board, assuming that initially, S is the only
-     *  square that might be over-full. */
+     *  square that might be over-full.  Overfull squares are resolved
+     *  depth-first from an explicit stack of pending squares, stopping as
+     *  soon as the board is won.  On boards of at least WAVE_SIZE, a
+     *  cascade still going after WAVE_JUMPS jumps is finished in parallel
+     *  waves by a Cascade instead. */
     private void jump(int S) {
-        int k = 0;
-        if (!overfull(S) || won()) {
+        byte[] cells = _cells;
+        if (cells[S] >> COLOR_BITS <= _capacity[S]) {
             return;
         }
-        while (k < 4) {
-            try {
-                _addSpot(squares[S].getColor(), adjacent(k, S));
-                squares[S].remSpot();
-                k++;
-            } catch (ArrayIndexOutOfBoundsException e) {
-                k++;
+        int[] adjacent = _adjacent, first = _first, counts = _counts;
+        int size = cells.length;
+        long key = _key;
+        int top, budget;
+        top = 0;
+        budget = _N >= WAVE_SIZE ? WAVE_JUMPS : Integer.MAX_VALUE;
+        _pending[top++] = S;
+        while (top > 0) {
+            int s = _pending[--top];
+            if (cells[s] >> COLOR_BITS <= _capacity[s]
+                || counts[RED_BITS] == size || counts[BLUE_BITS] == size) {
                 continue;
             }
-        }
-        for (k = 0; k < 4; k++) {
-            try {
-                jump(adjacent(k, S));
-            } catch (ArrayIndexOutOfBoundsException e) {
-                continue;
+            int colorBits = cells[s] & COLOR_MASK;
+            if (--budget == 0) {
+                _key = key;
+                _pending[top++] = s;
+                jumpInWaves(top, colorBits);
+                return;
+            }
+            int start = first[s], end = first[s + 1];
+            if (SearchStats.ENABLED) {
+                _jumps += 1;
+            }
+            record(s);
+            int cell = cells[s];
+            cells[s] = (byte) (cell - ((end - start) << COLOR_BITS));
+            key ^= Zobrist.square(s, cell) ^ Zobrist.square(s, cells[s]);
+            reindex(s, cell, cells[s]);
+            for (int k = start; k < end; k += 1) {
+                int m = adjacent[k];
+                record(m);
+                int old = cells[m];
+                counts[old & COLOR_MASK] -= 1;
+                counts[colorBits] += 1;
+                cells[m] = (byte) ((old & ~COLOR_MASK)
+                                   + (1 << COLOR_BITS) | colorBits);
+                key ^= Zobrist.square(m, old) ^ Zobrist.square(m, cells[m]);
+                if (old == 0) {
+                    occupy(m);
+                }
+                reindex(m, old, cells[m]);
+            }
+            if (top + end - start + 1 > _pending.length) {
+                _pending = Arrays.copyOf(_pending, 2 * _pending.length);
+            }
+            if (cells[s] >> COLOR_BITS > _capacity[s]) {
+                _pending[top++] = s;
+            }
+            for (int k = end - 1; k >= start; k -= 1) {
+                int m = adjacent[k];
+                if (cells[m] >> COLOR_BITS > _capacity[m]) {
+                    _pending[top++] = m;
+                }
             }
         }
+        _key = key;
     }
 
+    /** Finish the jumping begun by jump(), given that the only overfull
+     *  squares are among the first TOP squares on its stack, and that
+     *  they have the color whose ordinal is COLORBITS, by handing them
+     *  to my Cascade.  The squares it changes are then recorded in the
+     *  undo journal and, since the index of critical squares can only
+     *  follow changes made one square at a time, restored to their
+     *  original contents and changed again by store(). */
+    private void jumpInWaves(int top, int colorBits) {
+        if (_cascade == null) {
+            _cascade = new Cascade(_topology);
+        }
+        int count = _cascade.resolve(_cells, _pending, top, colorBits,
+                                     _counts[colorBits]);
+        int[] changes = _cascade.changes();
+        if (_journalSize + count > _journal.length) {
+            _journal = Arrays.copyOf(_journal,
+                                     Math.max(_journalSize + count,
+                                              2 * _journal.length));
+        }
+        System.arraycopy(changes, 0, _journal, _journalSize, count);
+        _journalSize += count;
+        for (int k = 0; k < count; k += 1) {
+            int n = changes[k] >>> JOURNAL_CELL_SHIFT;
+            int cell = _cells[n] & 0xff;
+            _cells[n] = (byte) changes[k];
+            changes[k] = n << JOURNAL_CELL_SHIFT | cell;
+        }
+        for (int k = 0; k < count; k += 1) {
+            store(changes[k] >>> JOURNAL_CELL_SHIFT, changes[k] & 0xff);
+        }
+        if (SearchStats.ENABLED) {
+            _jumps += _cascade.jumps();
+        }
+    }
+
+    /** Set my size to N, allocating squares and looking up the
+     *  topology of an N x N board. */
+    private void resize(int N) {
+        _N = N;
+        _cells = new byte[N * N];
+        clearCounts();
+        _key = 0;
+        _topology = Topology.forSize(N);
+        _adjacent = _topology.adjacent();
+        _first = _topology.first();
+        _capacity = _topology.capacity();
+        _threat = new boolean[N * N];
+        _criticalNear = new byte[N * N];
+        _numOccupied = 0;
+        _cascade = null;
+        clearIndex();
+    }
+
+    /** Returns the packed representation of a square holding SPOTS spots
+     *  of color COLOR. */
+    static byte pack(int spots, Color color) {
+        return (byte) (spots << COLOR_BITS | color.ordinal());
+    }
+
+    /** Number of low-order bits of a packed square holding its color. */
+    static final int COLOR_BITS = 2;
+    /** Mask extracting the color bits of a packed square. */
+    static final int COLOR_MASK = (1 << COLOR_BITS) - 1;
+    /** The color bits of a white square. */
+    private static final int WHITE_BITS = WHITE.ordinal();
+    /** The color bits of a red square. */
+    private static final int RED_BITS = RED.ordinal();
+    /** The color bits of a blue square. */
+    private static final int BLUE_BITS = BLUE.ordinal();
+    /** The largest number of spots a packed square can hold. */
+    static final int MAX_SPOTS = Byte.MAX_VALUE >> COLOR_BITS;
+    /** Colors indexed by ordinal, shared to avoid Color.values() copies. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Position of the square number within an undo journal entry, whose
+     *  low-order bits hold the square's previous packed contents. */
+    static final int JOURNAL_CELL_SHIFT = 8;
+    /** Smallest board size on which long cascades are handed over to a
+     *  Cascade. */
+    private static final int WAVE_SIZE = 256;
+    /** Number of jumps after which a cascade on a board of at least
+     *  WAVE_SIZE is handed over to a Cascade. */
+    private static final int WAVE_JUMPS = 1 << 12;
+
     /** Total combined number of moves by both sides. */
     protected int _moves;
     /** Convenience variable: size of board (squares along one edge). */
     private int _N;
+    /** The contents of my squares, packed as by pack(), in square-number
+     *  order. */
+    private byte[] _cells;
+    /** _counts[k] is the number of my squares whose color has ordinal
+     *  k. */
+    private final int[] _counts = new int[COLORS.length];
+    /** Zobrist key of my squares, excluding the player to move. */
+    private long _key;
+    /** The numbers of my occupied squares, in no particular order, in
+     *  _occupied[0 .. _numOccupied - 1]. */
+    private int[] _occupied = new int[64];
+    /** Number of my occupied squares. */
+    private int _numOccupied;
+    /** _threat[n] is true iff square #n is counted as a threat. */
+    private boolean[] _threat;
+    /** _criticalNear[n] is the number of critical neighbors of square
+     *  #n. */
+    private byte[] _criticalNear;
+    /** _critical[c] is the number of critical squares whose color has
+     *  ordinal c. */
+    private final int[] _critical = new int[COLOR_MASK + 1];
+    /** _threats[c] is the number of threats (see numThreats) of the
+     *  player whose color has ordinal c. */
+    private final int[] _threats = new int[COLOR_MASK + 1];
+    /** The neighbor structure of an N x N board. */
+    private Topology _topology;
+    /** Neighbor lists of my squares, as for Topology.adjacent(). */
+    private int[] _adjacent;
+    /** Index bounds into _adjacent, as for Topology.first(). */
+    private int[] _first;
+    /** Number of neighbors of each square, as for Topology.capacity(). */
+    private byte[] _capacity;
+    /** Stack of squares that may be overfull during jump(). */
+    private int[] _pending = new int[64];
+    /** Resolver of long cascades on large boards (null until needed). */
+    private Cascade _cascade;
+    /** Undo journal: entries made by record(), oldest first. */
+    private int[] _journal = new int[64];
+    /** Number of valid entries in _journal. */
+    private int _journalSize;
+    /** _frames[k] is the size of _journal before the k-th undoable move. */
+    private int[] _frames = new int[16];
+    /** Number of undoable moves. */
+    private int _numFrames;
+    /** Number of times a square has jumped (counted only if
+     *  SearchStats.ENABLED). */
+    private long _jumps;
 
-    
 }
@@ -0,0 +1,232 @@
+package jump61;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A read-only opening book: a file mapping positions to weighted
+ *  moves, mapped into memory so that looking up a position costs a
+ *  binary search rather than a search of the game tree, and so that all
+ *  the processes using one book share a single copy of it in the
+ *  operating system's page cache.  Books are written by BookMaker.
+ *
+ *  A book file consists of a HEADER_SIZE-byte header (the int MAGIC,
+ *  the int VERSION, the int number of entries, and an unused int)
+ *  followed by the entries, each ENTRY_SIZE bytes: the long key of a
+ *  position (see key(Board)), the int number of the square to move to,
+ *  and the int weight of the move, all big-endian.  Entries are sorted by
+ *  key, and the moves of each position by decreasing weight.  Since keys
+ *  are canonical (see Symmetry), a position and its rotations and
+ *  reflections share their entries, whose squares are those of the
+ *  position's image under its canonical symmetry (see move(Board,
+ *  int)).
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class OpeningBook {
+
+    /** Returns the book in the file named NAME.  A process maps each
+     *  book file only once, however many games and players use it,
+     *  unless the file changes.  Throws IOException if the file cannot
+     *  be read or is not a book. */
+    static OpeningBook open(String name) throws IOException {
+        Path path = Paths.get(name).toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(path);
+        OpeningBook book = OPEN.get(path);
+        if (book == null || !book._modified.equals(modified)) {
+            book = new OpeningBook(path, modified);
+            OPEN.put(path, book);
+        }
+        return book;
+    }
+
+    /** The book in the file at PATH, last modified at MODIFIED. */
+    private OpeningBook(Path path, FileTime modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("not an opening book");
+            }
+            _entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (_entries.getInt(0) != MAGIC) {
+            throw new IOException("not an opening book");
+        }
+        if (_entries.getInt(4) != VERSION) {
+            throw new IOException("unsupported opening book version");
+        }
+        _size = _entries.getInt(8);
+        long expected = HEADER_SIZE + (long) _size * ENTRY_SIZE;
+        if (_size < 0 || _entries.capacity() != expected) {
+            throw new IOException("truncated opening book");
+        }
+        _modified = modified;
+    }
+
+    /** Returns the key under which positions like that on B are stored:
+     *  its canonical key, adjusted so that boards of different sizes do
+     *  not share keys. */
+    static long key(Board b) {
+        return b.canonicalKey() ^ Zobrist.mix(SIZE_KEY + b.size());
+    }
+
+    /** Returns the square stored in a book for a move to square #MOVE
+     *  from the position on B: its image under B's canonical
+     *  symmetry. */
+    static int move(Board b, int move) {
+        return Symmetry.apply(b.canonicalSymmetry(), move, b.size());
+    }
+
+    /** Returns the number of entries in this book. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns a move for the player to move on B, chosen at random
+     *  among the book's moves for B in proportion to their weights using
+     *  GAME's random numbers, or -1 if the book has no legal move for
+     *  B. */
+    int move(Board b, Game game) {
+        long key = key(b);
+        int first = find(key);
+        int total, end;
+        total = 0;
+        for (end = first; end < _size && keyAt(end) == key; end += 1) {
+            total += weightAt(end);
+        }
+        if (total <= 0) {
+            return -1;
+        }
+        int r = game.randInt(total);
+        for (int k = first; k < end; k += 1) {
+            r -= weightAt(k);
+            if (r < 0) {
+                int move = Symmetry.unapply(b.canonicalSymmetry(), moveAt(k),
+                                            b.size());
+                return b.isLegal(b.whoseMove(), move) ? move : -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the index of the first entry whose key is KEY, or of the
+     *  first entry with a larger key if there is none. */
+    private int find(long key) {
+        int lo, hi;
+        lo = 0;
+        hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyAt(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the key of entry #K. */
+    private long keyAt(int k) {
+        return _entries.getLong(HEADER_SIZE + k * ENTRY_SIZE);
+    }
+
+    /** Returns the move of entry #K. */
+    private int moveAt(int k) {
+        return _entries.getInt(HEADER_SIZE + k * ENTRY_SIZE + 8);
+    }
+
+    /** Returns the weight of entry #K. */
+    private int weightAt(int k) {
+        return _entries.getInt(HEADER_SIZE + k * ENTRY_SIZE + 12);
+    }
+
+    /** Write ENTRIES, in any order, as a book to the file at PATH,
+     *  replacing any previous contents only once the new book is
+     *  complete. */
+    static void write(Path path, List<Entry> entries) throws IOException {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(null);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sorted.size());
+                out.writeInt(0);
+                for (Entry entry : sorted) {
+                    out.writeLong(entry._key);
+                    out.writeInt(entry._move);
+                    out.writeInt(entry._weight);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** One move of a position in a book being written. */
+    static final class Entry implements Comparable<Entry> {
+
+        /** An entry for the move to square #MOVE with weight WEIGHT > 0
+         *  from the position with book key KEY. */
+        Entry(long key, int move, int weight) {
+            assert weight > 0;
+            _key = key;
+            _move = move;
+            _weight = weight;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = Long.compare(_key, other._key);
+            if (c == 0) {
+                c = Integer.compare(other._weight, _weight);
+            }
+            return c == 0 ? Integer.compare(_move, other._move) : c;
+        }
+
+        /** Book key of the position. */
+        private final long _key;
+        /** Square moved to. */
+        private final int _move;
+        /** Relative frequency with which the move is chosen. */
+        private final int _weight;
+    }
+
+    /** First int of every book file ("J61B"). */
+    private static final int MAGIC = 0x4A363142;
+    /** Format version of the book files written.  (Version 1 books
+     *  were keyed by plain Zobrist keys.) */
+    private static final int VERSION = 2;
+    /** Size in bytes of a book file's header. */
+    private static final int HEADER_SIZE = 16;
+    /** Size in bytes of one entry. */
+    private static final int ENTRY_SIZE = 16;
+    /** Offset distinguishing the keys of boards of different sizes. */
+    private static final long SIZE_KEY = 0x510E527FADE682D1L;
+
+    /** Books already mapped by this process, by path. */
+    private static final ConcurrentHashMap<Path, OpeningBook> OPEN =
+        new ConcurrentHashMap<>();
+
+    /** The mapped file. */
+    private final MappedByteBuffer _entries;
+    /** Number of entries. */
+    private final int _size;
+    /** Modification time of the file when it was mapped. */
+    private final FileTime _modified;
+
+}
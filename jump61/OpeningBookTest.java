@@ -0,0 +1,47 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of opening books.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class OpeningBookTest extends TestCase {
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        MutableBoard B = new MutableBoard(3);
+        B.addSpot(RED, 4);
+        long key = OpeningBook.key(B);
+        assertTrue("sizes share keys",
+                   key != OpeningBook.key(new MutableBoard(4)));
+        Path path = Files.createTempFile("jump61", ".book");
+        try {
+            OpeningBook.write(path, Arrays.asList(
+                new OpeningBook.Entry(key + 1, 0, 1),
+                new OpeningBook.Entry(key, 8, 1),
+                new OpeningBook.Entry(key - 1, 2, 1)));
+            OpeningBook book = OpeningBook.open(path.toString());
+            assertEquals("wrong size", 3, book.size());
+            Writer nowhere = Writer.nullWriter();
+            Game game = new Game(new StringReader(""), nowhere, nowhere,
+                                 nowhere);
+            assertEquals("wrong book move", 8, book.move(B, game));
+            B.addSpot(BLUE, 8);
+            assertEquals("move not in book", -1, book.move(B, game));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package jump61;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Enumeration of all the move sequences of a given length from a
+ *  position (a "perft" count), for measuring the speed of move making
+ *  and undoing and for checking that two board implementations produce
+ *  the same game trees.  A sequence ends early if it reaches a won
+ *  position, so the leaves counted are the positions reached after DEPTH
+ *  moves together with the won positions reached after fewer.
+ *
+ *  With more than one thread, the sequences below the first few moves are
+ *  counted in separate tasks, each on its own copy of the board; the
+ *  counts are the same for any number of threads.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Perft {
+
+    /** A counter that uses THREADS threads. */
+    Perft(int threads) {
+        assert threads >= 1;
+        _threads = threads;
+    }
+
+    /** Return an array whose element #N is the number of leaves at
+     *  depth DEPTH >= 1 below the move to square #N on B, or -1 if that
+     *  move is illegal.  B is left as it was. */
+    long[] divide(Board b, int depth) {
+        assert depth >= 1;
+        int cells = b.size() * b.size();
+        long[] result = new long[cells];
+        Arrays.fill(result, -1);
+        _nodes.reset();
+        if (b.won()) {
+            return result;
+        }
+        Color player = b.whoseMove();
+        if (_threads == 1) {
+            long[] nodes = new long[1];
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(player, n)) {
+                    b.addSpot(player, n);
+                    nodes[0] += 1;
+                    result[n] = leaves(b, depth - 1, nodes);
+                    b.undo();
+                }
+            }
+            _nodes.add(nodes[0]);
+        } else {
+            ArrayList<Task> tasks = new ArrayList<>();
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(player, n)) {
+                    tasks.add(new Task(b, n, depth - 1, 1));
+                }
+            }
+            ForkJoinPool pool = new ForkJoinPool(_threads);
+            try {
+                pool.invoke(new RecursiveTask<Void>() {
+                    @Override
+                    protected Void compute() {
+                        invokeAll(tasks);
+                        return null;
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+            for (Task task : tasks) {
+                result[task.move()] = task.join();
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of moves made by the last call to divide. */
+    long nodes() {
+        return _nodes.sum();
+    }
+
+    /** Returns the number of leaves at depth DEPTH below B, adding the
+     *  number of moves made to NODES[0].  B is left as it was. */
+    static long leaves(Board b, int depth, long[] nodes) {
+        if (depth == 0 || b.won()) {
+            return 1;
+        }
+        Color player = b.whoseMove();
+        int cells = b.size() * b.size();
+        long total;
+        total = 0;
+        for (int n = 0; n < cells; n += 1) {
+            if (b.isLegal(player, n)) {
+                b.addSpot(player, n);
+                nodes[0] += 1;
+                total += leaves(b, depth - 1, nodes);
+                b.undo();
+            }
+        }
+        return total;
+    }
+
+    /** The count of the leaves below one move, split into subtasks for
+     *  the replies while near the root. */
+    private final class Task extends RecursiveTask<Long> {
+
+        /** Tasks are serializable only because RecursiveTask is. */
+        private static final long serialVersionUID = 1L;
+
+        /** A task counting the leaves at depth DEPTH below the move to
+         *  square #MOVE on a copy of B, which is at distance PLY - 1 from
+         *  the root. */
+        Task(Board b, int move, int depth, int ply) {
+            _board = Board.mutableCopy(null, b);
+            _move = move;
+            _depth = depth;
+            _ply = ply;
+        }
+
+        /** Returns the square moved to. */
+        int move() {
+            return _move;
+        }
+
+        @Override
+        protected Long compute() {
+            Board b = _board;
+            b.addSpot(b.whoseMove(), _move);
+            _nodes.increment();
+            if (_ply >= SPLIT_PLY || _depth <= MIN_SPLIT_DEPTH || b.won()) {
+                long[] nodes = new long[1];
+                long total = leaves(b, _depth, nodes);
+                _nodes.add(nodes[0]);
+                return total;
+            }
+            Color player = b.whoseMove();
+            int cells = b.size() * b.size();
+            ArrayList<Task> tasks = new ArrayList<>();
+            for (int n = 0; n < cells; n += 1) {
+                if (b.isLegal(player, n)) {
+                    tasks.add(new Task(b, n, _depth - 1, _ply + 1));
+                }
+            }
+            invokeAll(tasks);
+            long total;
+            total = 0;
+            for (Task task : tasks) {
+                total += task.join();
+            }
+            return total;
+        }
+
+        /** My copy of the position. */
+        private final Board _board;
+        /** The move whose leaves I count. */
+        private final int _move;
+        /** Depth of the leaves below _move. */
+        private final int _depth;
+        /** Number of moves from the root to the position after _move. */
+        private final int _ply;
+    }
+
+    /** Number of moves from the root below which tasks are not split. */
+    private static final int SPLIT_PLY = 2;
+    /** Remaining depth at or below which tasks are not split. */
+    private static final int MIN_SPLIT_DEPTH = 2;
+
+    /** Number of threads counting. */
+    private final int _threads;
+    /** Number of moves made by the current or last count. */
+    private final LongAdder _nodes = new LongAdder();
+
+}
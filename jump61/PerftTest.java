@@ -0,0 +1,30 @@
+package jump61;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of the move-path counter.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class PerftTest extends TestCase {
+
+    @Test
+    public void testPerft() {
+        MutableBoard B = new MutableBoard(2);
+        String before = B.toString();
+        long[] serial = new Perft(1).divide(B, 7);
+        long[] parallel = new Perft(3).divide(B, 7);
+        assertEquals("board changed", before, B.toString());
+        long total = 0;
+        for (int n = 0; n < 4; n += 1) {
+            assertEquals("wrong divide", 153, serial[n]);
+            total += serial[n];
+        }
+        assertEquals("wrong perft", 612, total);
+        assertTrue("parallel differs", Arrays.equals(serial, parallel));
+    }
+
+}
@@ -42,6 +42,15 @@ abstract class Player {
      *  proper color and that the game is not yet won. */
     abstract void makeMove();
 
+    /** Stop any work I am doing for the game in progress, which has
+     *  ended or in which I have been replaced. */
+    void stopGame() {
+    }
+
+    /** Return the name of the kind of player I am, as for the auto and
+     *  manual commands. */
+    abstract String name();
+
     /** My current color. */
     private Color _color;
 
@@ -0,0 +1,197 @@
+package jump61;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+import static jump61.Color.*;
+import static jump61.GameException.error;
+
+/** A reader of archives of game records (see GameRecord).  It lists the
+ *  games in an archive, prints the moves of one game with their search
+ *  statistics, prints the position at any ply of a game, or analyzes a
+ *  game by searching each of its positions and comparing the moves
+ *  played with those found.  Games are located by skipping over the
+ *  records before them without decoding them, and positions are
+ *  reconstructed from the nearest checkpoint.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Replay {
+
+    /** Replay as directed by the options in ARGS (see Usage.txt),
+     *  returning an exit code: 0 normally, and 1 for errors. */
+    static int run(String[] args) {
+        Replay replay;
+        try {
+            replay = new Replay(args);
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            return 1;
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out));
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(
+                     new FileInputStream(replay._archiveName)))) {
+            if (replay._game < 0) {
+                replay.list(in, out);
+            } else {
+                for (int k = 0; k < replay._game; k += 1) {
+                    if (!GameRecord.skip(in)) {
+                        throw new IOException("no game " + replay._game);
+                    }
+                }
+                GameRecord record = GameRecord.read(in);
+                if (record == null) {
+                    throw new IOException("no game " + replay._game);
+                }
+                replay.show(record, out);
+            }
+        } catch (IOException excp) {
+            out.flush();
+            System.err.printf("cannot read %s: %s%n", replay._archiveName,
+                              excp.getMessage());
+            return 1;
+        } catch (GameException excp) {
+            out.flush();
+            System.err.println(excp.getMessage());
+            return 1;
+        }
+        out.flush();
+        return 0;
+    }
+
+    /** A replay configured by the options in ARGS, the first of which
+     *  names the archive.  Throws GameException for bad options. */
+    private Replay(String[] args) {
+        if (args.length == 0) {
+            throw error("missing archive file");
+        }
+        _archiveName = args[0];
+        for (int k = 1; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                throw error("missing value for %s", args[k]);
+            }
+            String value = args[k + 1];
+            try {
+                switch (args[k]) {
+                case "--game":
+                    _game = Integer.parseInt(value);
+                    break;
+                case "--ply":
+                    _ply = Integer.parseInt(value);
+                    break;
+                case "--analyze":
+                    _analyzeDepth = Integer.parseInt(value);
+                    break;
+                default:
+                    throw error("unknown replay option: %s", args[k]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", args[k], value);
+            }
+        }
+        if (_game < 0 && (_ply >= 0 || _analyzeDepth > 0)) {
+            throw error("--ply and --analyze need --game");
+        }
+        if (_analyzeDepth < 0 || _analyzeDepth > AI.MAX_PLY) {
+            throw error("depth must be between 1 and %d", AI.MAX_PLY);
+        }
+    }
+
+    /** Print one line for each game in IN on OUT, then the totals. */
+    private void list(DataInputStream in, PrintWriter out)
+        throws IOException {
+        out.println("# game size red blue winner moves");
+        int games;
+        long moves;
+        games = 0;
+        moves = 0;
+        for (GameRecord record = GameRecord.read(in); record != null;
+             record = GameRecord.read(in)) {
+            out.printf("%d %d %s %s %s %d%n", games, record.size(),
+                       record.engine(RED), record.engine(BLUE),
+                       record.winner(), record.numMoves());
+            games += 1;
+            moves += record.numMoves();
+        }
+        out.printf("# %d games, %d moves%n", games, moves);
+    }
+
+    /** Print what the options ask for about the game in RECORD on
+     *  OUT: its moves, its position at one ply, or its analysis. */
+    private void show(GameRecord record, PrintWriter out) {
+        out.printf("# %dx%d, %s (red) vs %s (blue), winner %s", record.size(),
+                   record.size(), record.engine(RED), record.engine(BLUE),
+                   record.winner());
+        if (record.seed() != null) {
+            out.printf(", seed %d", record.seed());
+        }
+        out.println();
+        MutableBoard b = new MutableBoard(record.size());
+        if (_ply >= 0) {
+            if (_ply > record.numMoves()) {
+                throw error("game has only %d moves", record.numMoves());
+            }
+            record.position(_ply, b);
+            out.print(b);
+        } else if (_analyzeDepth > 0) {
+            analyze(record, b, out);
+        } else {
+            out.println("# ply row col [value depth nodes ms]");
+            record.position(0, b);
+            for (int k = 0; k < record.numMoves(); k += 1) {
+                int n = record.move(k);
+                out.printf("%d %d %d", k + 1, b.row(n), b.col(n));
+                if (record.hasStats(k)) {
+                    out.printf(" %d %d %d %d", record.value(k),
+                               record.depth(k), record.nodes(k),
+                               record.millis(k));
+                }
+                out.println();
+            }
+        }
+    }
+
+    /** Search each position of the game in RECORD to the analysis depth,
+     *  using B as a scratch board, and print on OUT each move played, the
+     *  best move found and its value, and the number of moves that agree
+     *  with the search. */
+    private void analyze(GameRecord record, MutableBoard b,
+                         PrintWriter out) {
+        Writer nowhere = Writer.nullWriter();
+        AI ai = new AI(new Game(new StringReader(""), nowhere, nowhere,
+                                nowhere), RED);
+        out.println("# ply row col best-row best-col value");
+        record.position(0, b);
+        int agree;
+        agree = 0;
+        for (int k = 0; k < record.numMoves(); k += 1) {
+            int n = record.move(k);
+            AI.Move best = ai.findMove(b, _analyzeDepth);
+            int m = best.getMove();
+            out.printf("%d %d %d %d %d %d%n", k + 1, b.row(n), b.col(n),
+                       b.row(m), b.col(m), best.getVal());
+            if (m == n) {
+                agree += 1;
+            }
+            b.addSpot(b.whoseMove(), n);
+        }
+        out.printf("# %d of %d moves agree with depth %d%n", agree,
+                   record.numMoves(), _analyzeDepth);
+    }
+
+    /** Name of the archive read. */
+    private final String _archiveName;
+    /** Number of the game shown (-1 to list all games). */
+    private int _game = -1;
+    /** Ply of the position printed (-1 for none). */
+    private int _ply = -1;
+    /** Depth of analysis searches (0 for no analysis). */
+    private int _analyzeDepth;
+
+}
@@ -0,0 +1,158 @@
+package jump61;
+
+/** Statistics of a search by an AI: the depth it reached, the positions
+ *  it visited and the time it took, and, if ENABLED, counts gathered in
+ *  the search itself of positions expanded and moves tried, of cutoffs,
+ *  of transposition-table probes and hits, and of cascades.  Each
+ *  searcher thread updates its own instance; add() combines them.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class SearchStats {
+
+    /** True iff searches gather the detailed counts, as set by the system
+     *  property jump61.stats (java -Djump61.stats=true ...).  Since this
+     *  is constant once the class is loaded, the compiled search omits
+     *  all updates of the counts when it is false. */
+    static final boolean ENABLED = Boolean.getBoolean("jump61.stats");
+
+    /** Reset all statistics to 0. */
+    void clear() {
+        _depth = 0;
+        _nodes = _millis = 0;
+        _expanded = _children = _cutoffs = _firstCutoffs = 0;
+        _probes = _hits = 0;
+        _cascades = _jumps = _longest = 0;
+    }
+
+    /** Add the counts in OTHER to mine. */
+    void add(SearchStats other) {
+        _expanded += other._expanded;
+        _children += other._children;
+        _cutoffs += other._cutoffs;
+        _firstCutoffs += other._firstCutoffs;
+        _probes += other._probes;
+        _hits += other._hits;
+        _cascades += other._cascades;
+        _jumps += other._jumps;
+        _longest = Math.max(_longest, other._longest);
+    }
+
+    /** Record that the search reached depth DEPTH, visiting NODES
+     *  positions in MILLIS milliseconds. */
+    void setTotals(int depth, long nodes, long millis) {
+        _depth = depth;
+        _nodes = nodes;
+        _millis = millis;
+    }
+
+    /** Count a probe of the transposition table, which found an entry
+     *  iff HIT. */
+    void noteProbe(boolean hit) {
+        _probes += 1;
+        if (hit) {
+            _hits += 1;
+        }
+    }
+
+    /** Count a position whose moves were generated. */
+    void noteExpanded() {
+        _expanded += 1;
+    }
+
+    /** Count a move tried from an expanded position, which made JUMPS
+     *  squares jump. */
+    void noteChild(long jumps) {
+        _children += 1;
+        if (jumps > 0) {
+            _cascades += 1;
+            _jumps += jumps;
+            _longest = Math.max(_longest, jumps);
+        }
+    }
+
+    /** Count a cutoff, which was caused by the first move tried iff
+     *  FIRST. */
+    void noteCutoff(boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstCutoffs += 1;
+        }
+    }
+
+    /** Returns the depth reached. */
+    int depth() {
+        return _depth;
+    }
+
+    /** Returns the number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Returns the time taken in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Returns the number of positions visited per second. */
+    long nodesPerSecond() {
+        return _nodes * 1000 / Math.max(1, _millis);
+    }
+
+    /** Returns a one-line summary of my statistics: the totals, followed
+     *  by the detailed counts if they were gathered.  The branching
+     *  factor is the mean number of moves tried per expanded position;
+     *  cutoff rates are percentages of expanded positions and of cutoffs
+     *  (for those by the first move); the hit rate is a percentage of
+     *  probes; cascades are a percentage of moves tried, and their mean
+     *  and maximum lengths are in squares jumped. */
+    String summary() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("depth %d nodes %d time %d nps %d",
+                                    _depth, _nodes, _millis,
+                                    nodesPerSecond()));
+        if (ENABLED) {
+            result.append(String.format(
+                " branching %.2f cutoffs %.1f%% first %.1f%% hits %.1f%%"
+                + " cascades %.1f%% mean %.1f longest %d",
+                ratio(_children, _expanded),
+                100 * ratio(_cutoffs, _expanded),
+                100 * ratio(_firstCutoffs, _cutoffs),
+                100 * ratio(_hits, _probes),
+                100 * ratio(_cascades, _children),
+                ratio(_jumps, _cascades), _longest));
+        }
+        return result.toString();
+    }
+
+    /** Returns X / Y, or 0 if Y is 0. */
+    private static double ratio(long x, long y) {
+        return y == 0 ? 0 : (double) x / y;
+    }
+
+    /** Depth of the deepest complete iteration. */
+    private int _depth;
+    /** Positions visited. */
+    private long _nodes;
+    /** Time taken in milliseconds. */
+    private long _millis;
+    /** Positions whose moves were generated. */
+    private long _expanded;
+    /** Moves tried from expanded positions. */
+    private long _children;
+    /** Expanded positions cut off before all moves were tried. */
+    private long _cutoffs;
+    /** Cutoffs caused by the first move tried. */
+    private long _firstCutoffs;
+    /** Probes of the transposition table. */
+    private long _probes;
+    /** Probes that found an entry. */
+    private long _hits;
+    /** Moves tried that made at least one square jump. */
+    private long _cascades;
+    /** Squares jumped by those moves in all. */
+    private long _jumps;
+    /** Most squares jumped by one move. */
+    private long _longest;
+
+}
@@ -0,0 +1,560 @@
+package jump61;
+
+import java.util.Arrays;
+
+import static jump61.Color.*;
+import static jump61.MutableBoard.COLOR_BITS;
+import static jump61.MutableBoard.COLOR_MASK;
+import static jump61.MutableBoard.JOURNAL_CELL_SHIFT;
+
+/** A Jump61 board for very large positions in which most squares are
+ *  empty.  Only the occupied squares are stored, in an open-addressing
+ *  hash table from square number to packed contents (see
+ *  MutableBoard.pack), probed linearly and kept at most half full (and,
+ *  when large, at least an eighth full).  Neighbors and capacities are
+ *  computed from square numbers rather than looked up in a Topology.  So
+ *  memory, clearing, and copying from another SparseBoard take time
+ *  proportional to the number of occupied squares, not to the size of
+ *  the board.
+ *
+ *  As in MutableBoard, moves are undone from a journal of the previous
+ *  contents of the squares each move changes, the key is maintained as
+ *  squares change, and so are the number of squares of each color and the
+ *  number of critical squares of each color.  Threats are counted by
+ *  scanning the occupied squares, and legal moves are listed around the
+ *  opponent's squares, gathered in the same scan, rather than by probing
+ *  the table for every square.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class SparseBoard extends Board {
+
+    /** An N x N board in initial configuration. */
+    SparseBoard(int N) {
+        clear(N);
+    }
+
+    /** A board whose initial contents are copied from BOARD0. Clears the
+     *  undo history. */
+    SparseBoard(Board board0) {
+        copy(board0);
+    }
+
+    /** Returns true iff the position on BOARD is large and sparse enough
+     *  to be held best in a SparseBoard. */
+    static boolean suits(Board board) {
+        int N = board.size();
+        long cells = (long) N * N;
+        return N >= MIN_SIZE
+            && (cells - board.numOfColor(WHITE)) * MAX_DENSITY <= cells;
+    }
+
+    @Override
+    void clear(int N) {
+        _N = N;
+        if (_squares == null || _squares.length > INITIAL_CAPACITY) {
+            _squares = new int[INITIAL_CAPACITY];
+            _cells = new byte[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(_squares, 0);
+        }
+        _occupied = 0;
+        Arrays.fill(_counts, 0);
+        _counts[WHITE_BITS] = N * N;
+        Arrays.fill(_critical, 0);
+        _key = 0;
+        _moves = 0;
+        clearUndo();
+    }
+
+    @Override
+    void copy(Board board) {
+        if (board instanceof SparseBoard) {
+            SparseBoard other = (SparseBoard) board;
+            _N = other._N;
+            _squares = other._squares.clone();
+            _cells = other._cells.clone();
+            _occupied = other._occupied;
+            System.arraycopy(other._counts, 0, _counts, 0, _counts.length);
+            System.arraycopy(other._critical, 0, _critical, 0,
+                             _critical.length);
+            _key = other._key;
+        } else {
+            clear(board.size());
+            for (int n = _N * _N - 1; n >= 0; n -= 1) {
+                Color color = board.color(n);
+                if (color != WHITE) {
+                    store(n, MutableBoard.pack(board.spots(n), color));
+                }
+            }
+        }
+        _moves = board.numMoves();
+        clearUndo();
+    }
+
+    @Override
+    int size() {
+        return _N;
+    }
+
+    @Override
+    int spots(int r, int c) {
+        return spots(sqNum(r, c));
+    }
+
+    @Override
+    int spots(int n) {
+        return get(n) >> COLOR_BITS;
+    }
+
+    @Override
+    Color color(int r, int c) {
+        return color(sqNum(r, c));
+    }
+
+    @Override
+    Color color(int n) {
+        return COLORS[get(n) & COLOR_MASK];
+    }
+
+    @Override
+    int neighbors(int n) {
+        int N = _N, r = n / N, c = n - r * N;
+        return 4 - (r == 0 ? 1 : 0) - (r == N - 1 ? 1 : 0)
+            - (c == 0 ? 1 : 0) - (c == N - 1 ? 1 : 0);
+    }
+
+    /** Unsupported: my neighbors are computed from square numbers,
+     *  since a Topology takes space in proportion to the size of the
+     *  board, and is kept for the rest of the run. */
+    @Override
+    Topology topology() {
+        throw new UnsupportedOperationException(
+            "'topology' operation not supported");
+    }
+
+    @Override
+    int numMoves() {
+        return _moves;
+    }
+
+    @Override
+    int numOfColor(Color color) {
+        return _counts[color.ordinal()];
+    }
+
+    @Override
+    public boolean won() {
+        int cells = _N * _N;
+        return _counts[RED_BITS] == cells || _counts[BLUE_BITS] == cells;
+    }
+
+    @Override
+    long key() {
+        return (_moves & 1) == 0 ? _key : _key ^ Zobrist.SIDE;
+    }
+
+    @Override
+    void symmetricKeys(long[] keys) {
+        Arrays.fill(keys, 0, Symmetry.COUNT,
+                    (_moves & 1) == 0 ? 0 : Zobrist.SIDE);
+        Symmetry symmetry = Symmetry.forSize(_N);
+        int[] squares = _squares;
+        for (int k = 0; k < squares.length; k += 1) {
+            if (squares[k] != 0) {
+                symmetry.add(keys, squares[k] - 1, _cells[k] & 0xff);
+            }
+        }
+    }
+
+    @Override
+    boolean critical(int n) {
+        return get(n) >> COLOR_BITS == neighbors(n);
+    }
+
+    @Override
+    int numCritical(Color player) {
+        return _critical[player.ordinal()];
+    }
+
+    @Override
+    int numThreats(Color player) {
+        int colorBits = player.ordinal(), oppBits = colorBits ^ COLOR_MASK;
+        int count;
+        count = 0;
+        for (int k = 0; k < _squares.length; k += 1) {
+            int n = _squares[k] - 1;
+            if (n >= 0 && (_cells[k] & COLOR_MASK) == colorBits
+                && _cells[k] >> COLOR_BITS == neighbors(n)
+                && neighborsOfColor(n, oppBits) > 0) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    int legalMoves(Color player, int[] moves) {
+        int oppBits = player.ordinal() ^ COLOR_MASK;
+        int blocked = _counts[oppBits];
+        if (_blocked.length < blocked) {
+            _blocked = new int[Math.max(blocked, 2 * _blocked.length)];
+        }
+        int[] squares = _squares, opponent = _blocked;
+        int count;
+        count = 0;
+        for (int k = 0; k < squares.length; k += 1) {
+            if (squares[k] != 0 && (_cells[k] & COLOR_MASK) == oppBits) {
+                opponent[count] = squares[k] - 1;
+                count += 1;
+            }
+        }
+        Arrays.sort(opponent, 0, blocked);
+        count = 0;
+        int n;
+        n = 0;
+        for (int k = 0; k < blocked; k += 1) {
+            while (n < opponent[k]) {
+                moves[count] = n;
+                count += 1;
+                n += 1;
+            }
+            n += 1;
+        }
+        for (int cells = _N * _N; n < cells; n += 1) {
+            moves[count] = n;
+            count += 1;
+        }
+        return count;
+    }
+
+    @Override
+    int neighborsOfColor(int n, Color color) {
+        return neighborsOfColor(n, color.ordinal());
+    }
+
+    /** Returns the number of neighbors of square #N whose color has
+     *  ordinal COLORBITS. */
+    private int neighborsOfColor(int n, int colorBits) {
+        int N = _N, r = n / N, c = n - r * N;
+        int count;
+        count = 0;
+        if (r > 0 && (get(n - N) & COLOR_MASK) == colorBits) {
+            count += 1;
+        }
+        if (r < N - 1 && (get(n + N) & COLOR_MASK) == colorBits) {
+            count += 1;
+        }
+        if (c > 0 && (get(n - 1) & COLOR_MASK) == colorBits) {
+            count += 1;
+        }
+        if (c < N - 1 && (get(n + 1) & COLOR_MASK) == colorBits) {
+            count += 1;
+        }
+        return count;
+    }
+
+    @Override
+    long jumps() {
+        return _jumps;
+    }
+
+    @Override
+    void addSpot(Color player, int r, int c) {
+        addSpot(player, sqNum(r, c));
+    }
+
+    @Override
+    void addSpot(Color player, int n) {
+        if (_numFrames == _frames.length) {
+            _frames = Arrays.copyOf(_frames, 2 * _frames.length);
+        }
+        _frames[_numFrames] = _journalSize;
+        _numFrames += 1;
+        _moves++;
+        record(n);
+        store(n, ((get(n) >> COLOR_BITS) + 1) << COLOR_BITS
+              | player.ordinal());
+        jump(n);
+    }
+
+    @Override
+    void set(int r, int c, int num, Color player) {
+        set(sqNum(r, c), num, player);
+    }
+
+    @Override
+    void set(int n, int num, Color player) {
+        assert 0 <= num && num <= MutableBoard.MAX_SPOTS;
+        clearUndo();
+        store(n, MutableBoard.pack(num, num == 0 ? WHITE : player));
+    }
+
+    @Override
+    void setMoves(int num) {
+        assert num > 0;
+        clearUndo();
+        _moves = num;
+    }
+
+    @Override
+    void undo() {
+        assert _numFrames > 0;
+        _numFrames -= 1;
+        int start = _frames[_numFrames];
+        for (int k = _journalSize - 1; k >= start; k -= 1) {
+            long entry = _journal[k];
+            store((int) (entry >>> JOURNAL_CELL_SHIFT), (int) entry & 0xff);
+        }
+        _journalSize = start;
+        _moves -= 1;
+    }
+
+    /** Return true iff there is a move that undo() can take back. */
+    boolean canUndo() {
+        return _numFrames > 0;
+    }
+
+    /** Do all jumping on this board, assuming that initially, S is the only
+     *  square that might be over-full, as for MutableBoard: depth first
+     *  from an explicit stack of pending squares, stopping as soon as the
+     *  board is won. */
+    private void jump(int S) {
+        if (get(S) >> COLOR_BITS <= neighbors(S)) {
+            return;
+        }
+        int N = _N;
+        int top;
+        top = 0;
+        _pending[top++] = S;
+        while (top > 0) {
+            int s = _pending[--top];
+            int cell = get(s), capacity = neighbors(s);
+            if (cell >> COLOR_BITS <= capacity || won()) {
+                continue;
+            }
+            int colorBits = cell & COLOR_MASK;
+            if (SearchStats.ENABLED) {
+                _jumps += 1;
+            }
+            record(s);
+            store(s, cell - (capacity << COLOR_BITS));
+            if (top + capacity + 1 > _pending.length) {
+                _pending = Arrays.copyOf(_pending, 2 * _pending.length);
+            }
+            if (cell - (capacity << COLOR_BITS) >> COLOR_BITS > capacity) {
+                _pending[top++] = s;
+            }
+            int r = s / N, c = s - r * N;
+            if (c < N - 1) {
+                top = give(s + 1, colorBits, top);
+            }
+            if (c > 0) {
+                top = give(s - 1, colorBits, top);
+            }
+            if (r < N - 1) {
+                top = give(s + N, colorBits, top);
+            }
+            if (r > 0) {
+                top = give(s - N, colorBits, top);
+            }
+        }
+    }
+
+    /** Add a spot of the color with ordinal COLORBITS to square #N
+     *  during jump(), whose stack has TOP elements, pushing N if it
+     *  becomes overfull.  Returns the new size of the stack. */
+    private int give(int n, int colorBits, int top) {
+        record(n);
+        int cell = ((get(n) >> COLOR_BITS) + 1) << COLOR_BITS | colorBits;
+        store(n, cell);
+        if (cell >> COLOR_BITS > neighbors(n)) {
+            _pending[top++] = n;
+        }
+        return top;
+    }
+
+    /** Save the current contents of square #N in the undo journal before
+     *  it is modified. */
+    private void record(int n) {
+        if (_journalSize == _journal.length) {
+            _journal = Arrays.copyOf(_journal, 2 * _journal.length);
+        }
+        _journal[_journalSize] = (long) n << JOURNAL_CELL_SHIFT | get(n);
+        _journalSize += 1;
+    }
+
+    /** Discard the undo history. */
+    private void clearUndo() {
+        _journalSize = _numFrames = 0;
+    }
+
+    /** Set the contents of square #N to the packed value CELL, keeping
+     *  the counts of squares of each color and of critical squares, and
+     *  the key, up to date. */
+    private void store(int n, int cell) {
+        int old = get(n);
+        if (old == cell) {
+            return;
+        }
+        int capacity = neighbors(n);
+        _counts[old & COLOR_MASK] -= 1;
+        _counts[cell & COLOR_MASK] += 1;
+        if (old >> COLOR_BITS == capacity) {
+            _critical[old & COLOR_MASK] -= 1;
+        }
+        if (cell >> COLOR_BITS == capacity) {
+            _critical[cell & COLOR_MASK] += 1;
+        }
+        _key ^= Zobrist.square(n, old) ^ Zobrist.square(n, cell);
+        put(n, cell);
+    }
+
+    /** Returns the packed contents of square #N (0 if it is empty). */
+    private int get(int n) {
+        int[] squares = _squares;
+        int mask = squares.length - 1;
+        for (int k = slot(n, mask); squares[k] != 0; k = (k + 1) & mask) {
+            if (squares[k] == n + 1) {
+                return _cells[k] & 0xff;
+            }
+        }
+        return 0;
+    }
+
+    /** Set the packed contents of square #N to CELL, removing N from the
+     *  table if CELL is 0. */
+    private void put(int n, int cell) {
+        int[] squares = _squares;
+        int mask = squares.length - 1;
+        int k;
+        for (k = slot(n, mask); squares[k] != 0; k = (k + 1) & mask) {
+            if (squares[k] == n + 1) {
+                if (cell == 0) {
+                    remove(k);
+                } else {
+                    _cells[k] = (byte) cell;
+                }
+                return;
+            }
+        }
+        if (cell == 0) {
+            return;
+        }
+        squares[k] = n + 1;
+        _cells[k] = (byte) cell;
+        _occupied += 1;
+        if (2 * _occupied > squares.length) {
+            rehash(2 * squares.length);
+        }
+    }
+
+    /** Empty slot K of the table, moving later entries of its probe
+     *  sequence back so that all entries remain reachable. */
+    private void remove(int k) {
+        int[] squares = _squares;
+        int mask = squares.length - 1;
+        _occupied -= 1;
+        int hole = k;
+        for (int j = (k + 1) & mask; squares[j] != 0; j = (j + 1) & mask) {
+            int home = slot(squares[j] - 1, mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                squares[hole] = squares[j];
+                _cells[hole] = _cells[j];
+                hole = j;
+            }
+        }
+        squares[hole] = 0;
+        _cells[hole] = 0;
+        if (squares.length > INITIAL_CAPACITY
+            && 8 * _occupied < squares.length) {
+            rehash(squares.length / 2);
+        }
+    }
+
+    /** Move the contents of the table into a new one with CAPACITY
+     *  slots. */
+    private void rehash(int capacity) {
+        int[] squares = _squares;
+        byte[] cells = _cells;
+        _squares = new int[capacity];
+        _cells = new byte[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < squares.length; j += 1) {
+            if (squares[j] != 0) {
+                int k = slot(squares[j] - 1, mask);
+                while (_squares[k] != 0) {
+                    k = (k + 1) & mask;
+                }
+                _squares[k] = squares[j];
+                _cells[k] = cells[j];
+            }
+        }
+    }
+
+    /** Returns the first slot probed for square #N in a table whose
+     *  size is MASK + 1. */
+    private static int slot(int n, int mask) {
+        int h = n * HASH_MULTIPLIER;
+        return (h ^ h >>> HASH_SHIFT) & mask;
+    }
+
+    /** Smallest board size held in a SparseBoard by Board.mutableCopy,
+     *  and by Game when it sets up an empty board. */
+    static final int MIN_SIZE = 64;
+    /** The number of squares per occupied square below which a
+     *  position is held in a SparseBoard by Board.mutableCopy. */
+    private static final int MAX_DENSITY = 16;
+    /** Initial (and smallest) number of slots in the table. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** Multiplier scattering square numbers over the table (the 32-bit
+     *  golden ratio). */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    /** Shift folding the well-mixed high bits of a hashed square number
+     *  into its low bits. */
+    private static final int HASH_SHIFT = 16;
+    /** The color bits of a white square. */
+    private static final int WHITE_BITS = WHITE.ordinal();
+    /** The color bits of a red square. */
+    private static final int RED_BITS = RED.ordinal();
+    /** The color bits of a blue square. */
+    private static final int BLUE_BITS = BLUE.ordinal();
+    /** Colors indexed by ordinal, shared to avoid Color.values() copies. */
+    private static final Color[] COLORS = Color.values();
+
+    /** Total combined number of moves by both sides. */
+    private int _moves;
+    /** Number of squares on a side. */
+    private int _N;
+    /** Hash table keys: one more than the number of the square held in
+     *  each slot, or 0 for an empty slot.  Its length is a power of 2. */
+    private int[] _squares;
+    /** Hash table values: the packed contents of the square held in each
+     *  slot. */
+    private byte[] _cells;
+    /** Number of occupied squares (and of full slots). */
+    private int _occupied;
+    /** _counts[k] is the number of my squares whose color has ordinal
+     *  k. */
+    private final int[] _counts = new int[COLORS.length];
+    /** _critical[c] is the number of critical squares whose color has
+     *  ordinal c. */
+    private final int[] _critical = new int[COLOR_MASK + 1];
+    /** Zobrist key of my squares, excluding the player to move. */
+    private long _key;
+    /** Stack of squares that may be overfull during jump(). */
+    private int[] _pending = new int[64];
+    /** The opponent's squares, gathered by legalMoves. */
+    private int[] _blocked = new int[64];
+    /** Undo journal: entries made by record(), oldest first. */
+    private long[] _journal = new long[64];
+    /** Number of valid entries in _journal. */
+    private int _journalSize;
+    /** _frames[k] is the size of _journal before the k-th undoable move. */
+    private int[] _frames = new int[16];
+    /** Number of undoable moves. */
+    private int _numFrames;
+    /** Number of times a square has jumped (counted only if
+     *  SearchStats.ENABLED). */
+    private long _jumps;
+
+}
@@ -0,0 +1,213 @@
+package jump61;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The eight symmetries of a square board (rotations and reflections),
+ *  numbered 0 .. COUNT - 1.  Symmetry #g first transposes the board
+ *  (exchanging rows and columns) if g & TRANSPOSE is nonzero, and then
+ *  reverses the order of its rows if g & FLIP_ROWS is nonzero and of its
+ *  columns if g & FLIP_COLUMNS is nonzero.
+ *
+ *  Positions that are images of one another share the same set of eight
+ *  keys of their images (see Board.symmetricKeys), so the least of them
+ *  (see least) identifies the class of a position, and the symmetry
+ *  giving it maps moves in the position to moves in a common
+ *  orientation.  Since that least key is the ordinary key of the image,
+ *  a cache may hold some positions under their canonical keys and
+ *  others under their plain ones.
+ *
+ *  An instance, shared among all boards of one size, computes those
+ *  keys.  For boards of at most TABLE_SIZE squares on a side, it looks
+ *  up the images of each square and the Zobrist keys of each square's
+ *  possible contents in tables, rather than computing them.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Symmetry {
+
+    /** Returns the (shared) symmetries of an N x N board. */
+    static Symmetry forSize(int N) {
+        return CACHE.computeIfAbsent(N, Symmetry::new);
+    }
+
+    /** The symmetries of an N x N board. */
+    private Symmetry(int N) {
+        _size = N;
+        if (N <= TABLE_SIZE) {
+            int cells = N * N;
+            _images = new int[cells * COUNT];
+            _squareKeys = new long[cells << CELL_BITS];
+            for (int n = 0; n < cells; n += 1) {
+                for (int g = 0; g < COUNT; g += 1) {
+                    _images[n * COUNT + g] = apply(g, n, N);
+                }
+                for (int cell = 0; cell < 1 << CELL_BITS; cell += 1) {
+                    _squareKeys[n << CELL_BITS | cell] =
+                        Zobrist.square(n, cell);
+                }
+            }
+        } else {
+            _images = null;
+            _squareKeys = null;
+        }
+    }
+
+    /** Add square #S, with packed contents CELL (see MutableBoard.pack),
+     *  to KEYS, where KEYS[g] is the key of the image under symmetry #g
+     *  of a position on one of my boards that leaves S empty. */
+    void add(long[] keys, int s, int cell) {
+        int[] images = _images;
+        if (images == null) {
+            int N = _size, r = s / N, c = s - r * N;
+            for (int g = 0; g < COUNT; g += 1) {
+                keys[g] ^= Zobrist.square(image(g, r, c, N), cell);
+            }
+        } else {
+            long[] squareKeys = _squareKeys;
+            for (int g = 0, k = s * COUNT; g < COUNT; g += 1, k += 1) {
+                keys[g] ^= squareKeys[images[k] << CELL_BITS | cell];
+            }
+        }
+    }
+
+    /** Returns the symmetry #g for which KEYS[g] is least (the lowest
+     *  such g if there are several), where KEYS is as set by
+     *  Board.symmetricKeys. */
+    static int least(long[] keys) {
+        int result = IDENTITY;
+        for (int g = IDENTITY + 1; g < COUNT; g += 1) {
+            if (keys[g] < keys[result]) {
+                result = g;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of the square to which symmetry G takes square
+     *  #S of an N x N board, or S itself if S is negative (no square). */
+    static int apply(int g, int s, int N) {
+        if (s < 0) {
+            return s;
+        }
+        int r = s / N;
+        return image(g, r, s - r * N, N);
+    }
+
+    /** Returns the number of the square that symmetry G takes to square
+     *  #S of an N x N board, or S itself if S is negative. */
+    static int unapply(int g, int s, int N) {
+        return apply(inverse(g), s, N);
+    }
+
+    /** Returns the symmetry that undoes G. */
+    static int inverse(int g) {
+        int flips = g & (FLIP_ROWS | FLIP_COLUMNS);
+        if ((g & TRANSPOSE) != 0 && (flips == FLIP_ROWS
+                                     || flips == FLIP_COLUMNS)) {
+            return g ^ FLIP_ROWS ^ FLIP_COLUMNS;
+        }
+        return g;
+    }
+
+    /** Returns a mask of the symmetries that leave the position on B
+     *  unchanged: bit g is set iff symmetry #g does.  Compares the squares
+     *  themselves, so the result is exact. */
+    static int symmetries(Board b) {
+        int N = b.size(), result;
+        result = 1 << IDENTITY;
+        for (int g = 1; g < COUNT; g += 1) {
+            boolean same;
+            same = true;
+            for (int n = 0; same && n < N * N; n += 1) {
+                int m = apply(g, n, N);
+                same = b.spots(n) == b.spots(m) && b.color(n) == b.color(m);
+            }
+            if (same) {
+                result |= 1 << g;
+            }
+        }
+        return result;
+    }
+
+    /** Remove from the first COUNT elements of MOVES, which are squares
+     *  of an N x N board in increasing order, all but the representative
+     *  (see representative) of each set of squares that the symmetries in
+     *  the mask SYMMETRIES take to one another.  Returns the number of
+     *  squares kept, which are left in order at the start of MOVES. */
+    static int distinctMoves(int[] moves, int count, int N, int symmetries) {
+        if (symmetries == 1 << IDENTITY) {
+            return count;
+        }
+        int kept;
+        kept = 0;
+        for (int k = 0; k < count; k += 1) {
+            if (representative(moves[k], N, symmetries) == moves[k]) {
+                moves[kept] = moves[k];
+                kept += 1;
+            }
+        }
+        return kept;
+    }
+
+    /** Returns the lowest-numbered of the squares of an N x N board to
+     *  which the symmetries in the mask SYMMETRIES (as returned by
+     *  symmetries) take square #S, or S itself if it is negative.  When
+     *  SYMMETRIES leave a position unchanged, moves to those squares lead
+     *  to images of one another, so only the representative need be
+     *  searched. */
+    static int representative(int s, int N, int symmetries) {
+        int result = s;
+        for (int g = 1; g < COUNT; g += 1) {
+            if ((symmetries & 1 << g) != 0) {
+                result = Math.min(result, apply(g, s, N));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of the square to which symmetry G takes the
+     *  square at (0-based) row R and column C of an N x N board. */
+    private static int image(int g, int r, int c, int N) {
+        if ((g & TRANSPOSE) != 0) {
+            int t = r;
+            r = c;
+            c = t;
+        }
+        if ((g & FLIP_ROWS) != 0) {
+            r = N - 1 - r;
+        }
+        if ((g & FLIP_COLUMNS) != 0) {
+            c = N - 1 - c;
+        }
+        return r * N + c;
+    }
+
+    /** The symmetry that changes nothing. */
+    static final int IDENTITY = 0;
+    /** Number of symmetries. */
+    static final int COUNT = 8;
+    /** Bit of a symmetry that reverses the order of the columns. */
+    static final int FLIP_COLUMNS = 1;
+    /** Bit of a symmetry that reverses the order of the rows. */
+    static final int FLIP_ROWS = 2;
+    /** Bit of a symmetry that exchanges rows and columns. */
+    static final int TRANSPOSE = 4;
+    /** Largest board size whose images and keys are tabulated. */
+    private static final int TABLE_SIZE = 16;
+    /** Number of bits in the packed contents of a square (see
+     *  MutableBoard.MAX_SPOTS). */
+    private static final int CELL_BITS = 7;
+
+    /** Symmetries already built, indexed by board size. */
+    private static final ConcurrentHashMap<Integer, Symmetry> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** Number of squares on a side. */
+    private final int _size;
+    /** _images[n * COUNT + g] is the square to which symmetry #g takes
+     *  square #n (null if not tabulated). */
+    private final int[] _images;
+    /** _squareKeys[n << CELL_BITS | cell] is Zobrist.square(n, cell)
+     *  (null if not tabulated). */
+    private final long[] _squareKeys;
+
+}
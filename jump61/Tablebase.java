@@ -0,0 +1,293 @@
+package jump61;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** An endgame tablebase: the exact result under perfect play of every
+ *  position on an N x N board with no overfull square, for N <= MAX_SIZE,
+ *  read from a file mapped into memory.
+ *
+ *  Each move adds a spot and cascades only move spots, so the number of
+ *  moves made in a game from the empty board equals the number of spots
+ *  on the board, which determines the player to move, and the game graph
+ *  has no cycles.  A position is therefore identified by the contents of
+ *  its squares alone.  Square #n contributes a digit in the range
+ *  [0 .. 2 * c], where c is the number of its neighbors: 0 if it is
+ *  empty, and otherwise 2 * s - 1 for s red spots or 2 * s for s blue
+ *  spots.  The digits form a mixed-radix index, with square #0 least
+ *  significant.  The positions are solved by solve(), which works
+ *  backward from the won positions over the successors of each
+ *  position (every successor has one more spot than its predecessor).
+ *
+ *  The file holds a HEADER_SIZE-byte header (the int MAGIC, the int
+ *  VERSION, the int N and the int number of positions, big-endian)
+ *  followed by one byte per position, in index order.  The byte is 0 for
+ *  a won position, and otherwise 2 * d + 1 if the player to move wins
+ *  after d more moves, or 2 * d if it loses after d more moves, where
+ *  the winner hurries and the loser delays.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Tablebase {
+
+    /** Returns the tablebase in the file named NAME.  A process maps
+     *  each file only once, unless the file changes.  Throws IOException
+     *  if the file cannot be read or is not a tablebase. */
+    static Tablebase open(String name) throws IOException {
+        Path path = Paths.get(name).toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(path);
+        Tablebase table = OPEN.get(path);
+        if (table == null || !table._modified.equals(modified)) {
+            table = new Tablebase(path, modified);
+            OPEN.put(path, table);
+        }
+        return table;
+    }
+
+    /** The tablebase in the file at PATH, last modified at MODIFIED. */
+    private Tablebase(Path path, FileTime modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("not a tablebase");
+            }
+            _codes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (_codes.getInt(0) != MAGIC) {
+            throw new IOException("not a tablebase");
+        }
+        if (_codes.getInt(4) != VERSION) {
+            throw new IOException("unsupported tablebase version");
+        }
+        _N = _codes.getInt(8);
+        if (_N < 2 || _N > MAX_SIZE) {
+            throw new IOException("bad tablebase board size");
+        }
+        _weights = weights(_N);
+        int positions = _weights[_N * _N];
+        if (_codes.getInt(12) != positions
+            || _codes.capacity() != HEADER_SIZE + (long) positions) {
+            throw new IOException("truncated tablebase");
+        }
+        _modified = modified;
+    }
+
+    /** Returns the size of the boards I cover. */
+    int size() {
+        return _N;
+    }
+
+    /** Returns the code (as described above) of the position on B, or 0
+     *  if B is won, is not of my size, has an overfull square, or has a
+     *  player to move other than the one implied by its spots. */
+    int probe(Board b) {
+        if (b.size() != _N || b.won()) {
+            return 0;
+        }
+        int index = index(b, _weights);
+        return index < 0 ? 0 : _codes.get(HEADER_SIZE + index) & 0xff;
+    }
+
+    /** Returns a best move for the player to move on B, or -1 if B is not
+     *  covered (see probe).  Among equally good moves, the one on the
+     *  lowest-numbered square is chosen. */
+    int bestMove(Board b) {
+        if (probe(b) == 0) {
+            return -1;
+        }
+        Board copy = Board.mutableCopy(null, b);
+        Color player = copy.whoseMove();
+        int best = -1, bestRank = Integer.MIN_VALUE;
+        for (int n = 0; n < _N * _N; n += 1) {
+            if (copy.isLegal(player, n)) {
+                copy.addSpot(player, n);
+                int rank = copy.won() ? Integer.MAX_VALUE
+                    : -rank(probe(copy));
+                copy.undo();
+                if (rank > bestRank) {
+                    best = n;
+                    bestRank = rank;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Returns the value for the player to move of a position with code
+     *  CODE (which is not 0), PLY moves from the root of a search, on
+     *  AI's scale: won positions are worth WIN_VALUE less the number of
+     *  moves from the root to the win. */
+    static int value(int code, int ply) {
+        int d = code >> 1;
+        return (code & 1) == 1 ? AI.WIN_VALUE - ply - d
+            : ply + d - AI.WIN_VALUE;
+    }
+
+    /** Returns a number that is larger the better the position with
+     *  code CODE (which is not 0) is for the player to move. */
+    private static int rank(int code) {
+        return value(code, 0);
+    }
+
+    /** Returns the index of the position on B using the mixed-radix
+     *  WEIGHTS of its squares (see weights), or -1 if B has an overfull
+     *  square or a player to move other than the one implied by its
+     *  spots. */
+    private static int index(Board b, int[] weights) {
+        int index, spots;
+        index = spots = 0;
+        for (int n = b.size() * b.size() - 1; n >= 0; n -= 1) {
+            int s = b.spots(n);
+            if (s > b.neighbors(n)) {
+                return -1;
+            }
+            if (s > 0) {
+                index += (2 * s - (b.color(n) == Color.BLUE ? 0 : 1))
+                    * weights[n];
+                spots += s;
+            }
+        }
+        return (spots & 1) == (b.numMoves() & 1) ? index : -1;
+    }
+
+    /** Returns the place values of the squares of an N x N board in a
+     *  position index: element #n is the product of the radices of the
+     *  squares numbered below n, and the last element is the number of
+     *  positions. */
+    private static int[] weights(int N) {
+        Topology topology = Topology.forSize(N);
+        int[] weights = new int[N * N + 1];
+        weights[0] = 1;
+        for (int n = 0; n < N * N; n += 1) {
+            weights[n + 1] = weights[n] * (2 * topology.capacity()[n] + 1);
+        }
+        return weights;
+    }
+
+    /** Returns the codes of all positions of an N x N board, in index
+     *  order, for N <= MAX_SIZE. */
+    static byte[] solve(int N) {
+        assert 2 <= N && N <= MAX_SIZE;
+        int[] weights = weights(N);
+        byte[] codes = new byte[weights[N * N]];
+        Arrays.fill(codes, UNSOLVED);
+        MutableBoard b = new MutableBoard(N);
+        for (int index = 0; index < codes.length; index += 1) {
+            if (codes[index] == UNSOLVED) {
+                b.clear(N);
+                int spots;
+                spots = 0;
+                for (int n = 0, rest = index; n < N * N; n += 1) {
+                    int digit = rest % (2 * b.neighbors(n) + 1);
+                    rest /= 2 * b.neighbors(n) + 1;
+                    if (digit > 0) {
+                        b.set(n, (digit + 1) / 2,
+                              digit % 2 == 1 ? Color.RED : Color.BLUE);
+                        spots += (digit + 1) / 2;
+                    }
+                }
+                if (spots > 0) {
+                    b.setMoves(spots);
+                }
+                solve(b, index, weights, codes);
+            }
+        }
+        return codes;
+    }
+
+    /** Set CODES[INDEX] to the code of the position on B, whose index is
+     *  INDEX, solving its unsolved successors first, and return it.  The
+     *  weights of the index are WEIGHTS.  B is left as it was. */
+    private static int solve(MutableBoard b, int index, int[] weights,
+                             byte[] codes) {
+        int code;
+        if (b.won()) {
+            code = 0;
+        } else {
+            Color player = b.whoseMove();
+            int win = Integer.MAX_VALUE, loss;
+            loss = 0;
+            for (int n = b.size() * b.size() - 1; n >= 0; n -= 1) {
+                if (b.isLegal(player, n)) {
+                    b.addSpot(player, n);
+                    if (b.won()) {
+                        win = 1;
+                    } else {
+                        int next = index(b, weights);
+                        int c = codes[next] & 0xff;
+                        if (codes[next] == UNSOLVED) {
+                            c = solve(b, next, weights, codes);
+                        }
+                        if ((c & 1) == 1) {
+                            loss = Math.max(loss, (c >> 1) + 1);
+                        } else {
+                            win = Math.min(win, (c >> 1) + 1);
+                        }
+                    }
+                    b.undo();
+                }
+            }
+            code = win < Integer.MAX_VALUE ? 2 * win + 1 : 2 * loss;
+        }
+        codes[index] = (byte) code;
+        return code;
+    }
+
+    /** Write CODES, the codes of all positions of an N x N board as
+     *  returned by solve(N), as a tablebase to the file at PATH,
+     *  replacing any previous contents only once the new file is
+     *  complete. */
+    static void write(Path path, int N, byte[] codes) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(N);
+                out.writeInt(codes.length);
+                out.write(codes);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Largest board size covered by tablebases.  (A 4 x 4 board has
+     *  about 2.4e13 positions.) */
+    static final int MAX_SIZE = 3;
+
+    /** First int of every tablebase file ("J61T"). */
+    private static final int MAGIC = 0x4A363154;
+    /** Format version of the tablebase files written. */
+    private static final int VERSION = 1;
+    /** Size in bytes of a tablebase file's header. */
+    private static final int HEADER_SIZE = 16;
+    /** Mark of a position not yet solved by solve(). */
+    private static final byte UNSOLVED = (byte) 0xff;
+
+    /** Tablebases already mapped by this process, by path. */
+    private static final ConcurrentHashMap<Path, Tablebase> OPEN =
+        new ConcurrentHashMap<>();
+
+    /** The mapped file. */
+    private final MappedByteBuffer _codes;
+    /** Size of the boards covered. */
+    private final int _N;
+    /** Place values of the squares in a position index (see weights). */
+    private final int[] _weights;
+    /** Modification time of the file when it was mapped. */
+    private final FileTime _modified;
+
+}
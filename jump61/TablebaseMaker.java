@@ -0,0 +1,89 @@
+package jump61;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static jump61.GameException.error;
+
+/** The offline generator of endgame tablebases (see Tablebase), which
+ *  solves every position of each requested board size and writes one
+ *  file per size.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class TablebaseMaker {
+
+    /** Generate the tablebases described by the options in ARGS (see
+     *  Usage.txt), returning an exit code: 0 normally, and 1 for
+     *  errors. */
+    static int run(String[] args) {
+        TablebaseMaker maker;
+        try {
+            maker = new TablebaseMaker(args);
+        } catch (GameException excp) {
+            System.err.println(excp.getMessage());
+            return 1;
+        }
+        for (int N : maker._sizes) {
+            Path path = Paths.get(maker._dirName, fileName(N));
+            long start = System.currentTimeMillis();
+            byte[] codes = Tablebase.solve(N);
+            try {
+                Tablebase.write(path, N, codes);
+            } catch (IOException excp) {
+                System.err.printf("cannot write %s: %s%n", path,
+                                  excp.getMessage());
+                return 1;
+            }
+            System.out.printf("%d positions written to %s in %d ms%n",
+                              codes.length, path,
+                              System.currentTimeMillis() - start);
+        }
+        return 0;
+    }
+
+    /** Returns the name of the file holding the tablebase for N x N
+     *  boards. */
+    static String fileName(int N) {
+        return String.format("jump61-%dx%d.tb", N, N);
+    }
+
+    /** A generator configured by the options in ARGS.  Throws
+     *  GameException for bad options. */
+    private TablebaseMaker(String[] args) {
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                throw error("missing value for %s", args[k]);
+            }
+            String value = args[k + 1];
+            try {
+                switch (args[k]) {
+                case "--sizes":
+                    String[] sizes = value.split(",");
+                    _sizes = new int[sizes.length];
+                    for (int i = 0; i < sizes.length; i += 1) {
+                        _sizes[i] = Integer.parseInt(sizes[i]);
+                        if (_sizes[i] < 2 || _sizes[i] > Tablebase.MAX_SIZE) {
+                            throw error("tablebase sizes must be between 2 "
+                                        + "and %d", Tablebase.MAX_SIZE);
+                        }
+                    }
+                    break;
+                case "--dir":
+                    _dirName = value;
+                    break;
+                default:
+                    throw error("unknown tablebase option: %s", args[k]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", args[k], value);
+            }
+        }
+    }
+
+    /** Board sizes solved. */
+    private int[] _sizes = { 2, 3 };
+    /** Name of the directory to which files are written. */
+    private String _dirName = ".";
+
+}
@@ -0,0 +1,42 @@
+package jump61;
+
+import static jump61.Color.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of endgame tablebases.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class TablebaseTest extends TestCase {
+
+    @Test
+    public void testTablebase() throws IOException {
+        Path path = Files.createTempFile("jump61", ".tb");
+        try {
+            Tablebase.write(path, 2, Tablebase.solve(2));
+            Tablebase table = Tablebase.open(path.toString());
+            MutableBoard B = new MutableBoard(2);
+            int code = table.probe(B);
+            assertEquals("red should lose after 8 moves", 16, code);
+            while (!B.won()) {
+                assertEquals("inconsistent codes", code, table.probe(B));
+                B.addSpot(B.whoseMove(), table.bestMove(B));
+                code = (code - 2) ^ 1;
+            }
+            assertEquals("wrong length", 8, B.numMoves());
+            assertEquals("wrong winner", BLUE, B.getWinner());
+            B.undo();
+            B.setMoves(B.numMoves() + 1);
+            assertEquals("wrong player accepted", 0, table.probe(B));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}
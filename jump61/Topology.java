@@ -0,0 +1,87 @@
+package jump61;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The fixed neighbor structure of an N x N Jump61 board: for each square
+ *  number, the square numbers of its neighbors and the number of spots it
+ *  can hold without being overfull.  Topologies are immutable and shared
+ *  among all boards of the same size.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Topology {
+
+    /** Returns the (shared) topology of an N x N board. */
+    static Topology forSize(int N) {
+        return CACHE.computeIfAbsent(N, Topology::new);
+    }
+
+    /** The topology of an N x N board. */
+    private Topology(int N) {
+        _size = N;
+        int cells = N * N;
+        _first = new int[cells + 1];
+        _capacity = new byte[cells];
+        int[] adj = new int[4 * cells];
+        int k;
+        k = 0;
+        for (int n = 0; n < cells; n += 1) {
+            int r = n / N, c = n % N;
+            _first[n] = k;
+            if (r > 0) {
+                adj[k++] = n - N;
+            }
+            if (r < N - 1) {
+                adj[k++] = n + N;
+            }
+            if (c > 0) {
+                adj[k++] = n - 1;
+            }
+            if (c < N - 1) {
+                adj[k++] = n + 1;
+            }
+            _capacity[n] = (byte) (k - _first[n]);
+        }
+        _first[cells] = k;
+        _adjacent = k == adj.length ? adj : Arrays.copyOf(adj, k);
+    }
+
+    /** Return the number of rows and of columns of my boards. */
+    int size() {
+        return _size;
+    }
+
+    /** Returns an array in which the neighbors of square #N are the
+     *  elements at indices first()[N] to first()[N + 1] - 1, listed in
+     *  the order above, below, left, right (omitting those off the
+     *  board). */
+    int[] adjacent() {
+        return _adjacent;
+    }
+
+    /** Returns the index bounds into adjacent() described there. */
+    int[] first() {
+        return _first;
+    }
+
+    /** Returns an array whose element N is the number of neighbors of
+     *  square #N, which is also the largest number of spots it can hold
+     *  without being overfull. */
+    byte[] capacity() {
+        return _capacity;
+    }
+
+    /** Topologies already built, indexed by board size. */
+    private static final ConcurrentHashMap<Integer, Topology> CACHE =
+        new ConcurrentHashMap<>();
+
+    /** Number of squares on a side. */
+    private final int _size;
+    /** Concatenated neighbor lists of all squares. */
+    private final int[] _adjacent;
+    /** Start of each square's neighbor list in _adjacent. */
+    private final int[] _first;
+    /** Number of neighbors of each square. */
+    private final byte[] _capacity;
+
+}
@@ -0,0 +1,350 @@
+package jump61;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static jump61.Color.*;
+import static jump61.GameException.error;
+
+/** A headless match between two automated engines, played as many
+ *  concurrent games, each with its own Game and boards and discarding all
+ *  output.  For each board size, the match consists of pairs of games
+ *  from the same seeded random opening, with each engine playing red in
+ *  one game of the pair.  One line per game is written to a results file
+ *  as games finish, and a summary of the match (the score, an Elo
+ *  estimate, and a sequential probability ratio test of whether engine 1
+ *  is stronger than engine 2) is printed and appended to the file as
+ *  comment lines.
+ *
+ *  Games run on a fixed pool of threads, one game per thread at a time,
+ *  and each engine searches single-threaded.  Under a time control,
+ *  running more games at once than there are processors shortens every
+ *  engine's effective thinking time.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Tournament {
+
+    /** Run the match described by the options in ARGS (see Usage.txt),
+     *  returning an exit code: 0 normally, and 1 for errors. */
+    static int run(String[] args) {
+        return run(args, System.out, System.err);
+    }
+
+    /** Run the match described by ARGS as for run(ARGS), printing the
+     *  summary on OUT and error messages on ERR. */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Tournament match;
+        try {
+            match = new Tournament(args);
+        } catch (GameException excp) {
+            err.println(excp.getMessage());
+            return 1;
+        }
+        try (PrintWriter results =
+             new PrintWriter(new FileWriter(match._resultsName))) {
+            match.play(results, out);
+        } catch (IOException excp) {
+            err.printf("cannot write %s: %s%n", match._resultsName,
+                       excp.getMessage());
+            return 1;
+        } catch (InterruptedException excp) {
+            return 1;
+        }
+        return match._failed == 0 ? 0 : 1;
+    }
+
+    /** A match configured by the options in ARGS.  Throws GameException
+     *  for bad options. */
+    private Tournament(String[] args) {
+        for (int k = 0; k < args.length; k += 2) {
+            if (k + 1 == args.length) {
+                throw error("missing value for %s", args[k]);
+            }
+            String value = args[k + 1];
+            try {
+                switch (args[k]) {
+                case "--engines":
+                    String[] engines = value.split(",");
+                    if (engines.length != 2) {
+                        throw error("--engines needs two engine names");
+                    }
+                    _engine1 = checkEngine(engines[0]);
+                    _engine2 = checkEngine(engines[1]);
+                    break;
+                case "--sizes":
+                    String[] sizes = value.split(",");
+                    _sizes = new int[sizes.length];
+                    for (int i = 0; i < sizes.length; i += 1) {
+                        _sizes[i] = Integer.parseInt(sizes[i]);
+                        if (_sizes[i] < 2) {
+                            throw error("board sizes must be at least 2");
+                        }
+                    }
+                    break;
+                case "--pairs":
+                    _pairs = Integer.parseInt(value);
+                    break;
+                case "--movetime":
+                    _moveTime = Long.parseLong(value);
+                    break;
+                case "--gametime":
+                    _gameTime = Long.parseLong(value);
+                    break;
+                case "--seed":
+                    _seed = Long.parseLong(value);
+                    break;
+                case "--openings":
+                    _openingMoves = Integer.parseInt(value);
+                    break;
+                case "--concurrency":
+                    _concurrency = Integer.parseInt(value);
+                    break;
+                case "--elo":
+                    String[] elos = value.split(",");
+                    if (elos.length != 2) {
+                        throw error("--elo needs two Elo differences");
+                    }
+                    _elo0 = Double.parseDouble(elos[0]);
+                    _elo1 = Double.parseDouble(elos[1]);
+                    break;
+                case "--out":
+                    _resultsName = value;
+                    break;
+                case "--book":
+                    _bookName = value;
+                    break;
+                case "--records":
+                    _recordsName = value;
+                    break;
+                default:
+                    throw error("unknown tournament option: %s", args[k]);
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", args[k], value);
+            }
+        }
+        if (_pairs < 1 || _concurrency < 1 || _openingMoves < 0
+            || _moveTime < 0 || _gameTime < 0) {
+            throw error("game counts and times must be non-negative");
+        }
+        if (_elo0 >= _elo1) {
+            throw error("--elo bounds must be increasing");
+        }
+    }
+
+    /** Returns ENGINE if it names an engine, and otherwise throws a
+     *  GameException. */
+    private static String checkEngine(String engine) {
+        if (!engine.equals("minmax") && !engine.equals("mcts")) {
+            throw error("unknown engine: '%s'", engine);
+        }
+        return engine;
+    }
+
+    /** Play all the games of the match, writing each result to RESULTS
+     *  as it finishes, followed by the summary, which also goes to
+     *  OUT. */
+    private void play(PrintWriter results, PrintStream out)
+        throws InterruptedException {
+        _results = results;
+        results.printf("# %s vs %s; movetime %d, gametime %d, seed %d%n",
+                       _engine1, _engine2, _moveTime, _gameTime, _seed);
+        results.println("# game size red blue winner moves millis");
+        ExecutorService pool = Executors.newFixedThreadPool(_concurrency);
+        _wins = new int[_sizes.length];
+        _losses = new int[_sizes.length];
+        int game;
+        game = 0;
+        for (int s = 0; s < _sizes.length; s += 1) {
+            for (int p = 0; p < _pairs; p += 1) {
+                long opening = Zobrist.mix(_seed + Zobrist.mix(
+                    (long) _sizes[s] << 32 | p));
+                for (int swap = 0; swap < 2; swap += 1) {
+                    int id = game, sizeIndex = s;
+                    boolean swapped = swap == 1;
+                    pool.execute(() -> playGame(id, sizeIndex, opening,
+                                                swapped));
+                    game += 1;
+                }
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        StringWriter summary = new StringWriter();
+        summarize(new PrintWriter(summary));
+        out.print(summary);
+        for (String line : summary.toString().split("\\R")) {
+            results.println("# " + line);
+        }
+    }
+
+    /** Play game number ID of the match on board size #SIZEINDEX, after
+     *  an opening generated from OPENING, with engine 1 playing blue if
+     *  SWAPPED and red otherwise, and record its result. */
+    private void playGame(int id, int sizeIndex, long opening,
+                          boolean swapped) {
+        int N = _sizes[sizeIndex];
+        String red = swapped ? _engine2 : _engine1,
+            blue = swapped ? _engine1 : _engine2;
+        StringWriter errors = new StringWriter();
+        Writer nowhere = Writer.nullWriter();
+        Game game = new Game(new StringReader(""), nowhere, nowhere, errors);
+        long start = System.currentTimeMillis();
+        try {
+            game.executeCommand("seed " + (opening + (swapped ? 1 : 0)));
+            game.executeCommand("size " + N);
+            game.executeCommand("movetime " + _moveTime);
+            game.executeCommand("gametime " + _gameTime);
+            if (_bookName != null) {
+                game.executeCommand("book " + _bookName);
+            }
+            if (_recordsName != null) {
+                game.executeCommand("record " + _recordsName);
+            }
+            Board board = game.getBoard();
+            Random random = new Random(opening);
+            for (int k = 0; k < 2 * _openingMoves && !board.won(); k += 1) {
+                Color player = board.whoseMove();
+                int n;
+                do {
+                    n = random.nextInt(N * N);
+                } while (!board.isLegal(player, n));
+                game.makeMove(n);
+            }
+            if (errors.getBuffer().length() > 0) {
+                throw new IllegalStateException(errors.toString().trim());
+            }
+            Color winner = game.playAutomated(red, blue);
+            record(id, sizeIndex, red, blue, winner == RED != swapped,
+                   winner, board.numMoves(),
+                   System.currentTimeMillis() - start);
+        } catch (RuntimeException excp) {
+            synchronized (this) {
+                _failed += 1;
+                _results.printf("# game %d failed: %s%n", id, excp);
+                _results.flush();
+            }
+        }
+    }
+
+    /** Record that game number ID, on board size #SIZEINDEX between
+     *  engines RED and BLUE, was won by WINNER (engine 1 iff WON) after
+     *  MOVES moves and MILLIS milliseconds. */
+    private synchronized void record(int id, int sizeIndex, String red,
+                                     String blue, boolean won, Color winner,
+                                     int moves, long millis) {
+        _results.printf("%d %d %s %s %s %d %d%n", id, _sizes[sizeIndex],
+                        red, blue, winner, moves, millis);
+        _results.flush();
+        if (won) {
+            _wins[sizeIndex] += 1;
+        } else {
+            _losses[sizeIndex] += 1;
+        }
+    }
+
+    /** Print the match summary on OUT. */
+    private void summarize(PrintWriter out) {
+        int wins, losses;
+        wins = losses = 0;
+        for (int s = 0; s < _sizes.length; s += 1) {
+            out.printf("size %d: %s %d - %d %s%n", _sizes[s], _engine1,
+                       _wins[s], _losses[s], _engine2);
+            wins += _wins[s];
+            losses += _losses[s];
+        }
+        int games = wins + losses;
+        out.printf("total: %s %d - %d %s", _engine1, wins, losses,
+                   _engine2);
+        if (_failed > 0) {
+            out.printf(" (%d games failed)", _failed);
+        }
+        out.println();
+        if (games == 0) {
+            out.flush();
+            return;
+        }
+        double score = (double) wins / games;
+        double margin = Z_95 * Math.sqrt(score * (1 - score) / games);
+        out.printf("Elo difference: %.1f (95%% interval %.1f to %.1f)%n",
+                   elo(score), elo(score - margin), elo(score + margin));
+        double llr = llr(wins, losses, _elo0, _elo1),
+            lower = Math.log(BETA / (1 - ALPHA)),
+            upper = Math.log((1 - BETA) / ALPHA);
+        out.printf("SPRT [%.1f, %.1f]: LLR %.2f (%.2f, %.2f): %s%n",
+                   _elo0, _elo1, llr, lower, upper,
+                   llr >= upper ? "H1 accepted"
+                   : llr <= lower ? "H0 accepted" : "inconclusive");
+        out.flush();
+    }
+
+    /** Returns the Elo difference corresponding to an expected SCORE
+     *  (the fraction of games won), clamped to avoid infinities. */
+    static double elo(double score) {
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /** Returns the expected score of a player ELO points stronger than
+     *  its opponent. */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** Returns the log-likelihood ratio of WINS wins and LOSSES losses
+     *  (there are no draws in Jump61) under the hypothesis that the
+     *  Elo difference is ELO1 over the hypothesis that it is ELO0. */
+    static double llr(int wins, int losses, double elo0, double elo1) {
+        double p0 = expectedScore(elo0), p1 = expectedScore(elo1);
+        return wins * Math.log(p1 / p0)
+            + losses * Math.log((1 - p1) / (1 - p0));
+    }
+
+    /** Normal quantile for a two-sided 95% interval. */
+    private static final double Z_95 = 1.959964;
+    /** Probabilities of false positive and false negative results from
+     *  the SPRT. */
+    private static final double ALPHA = 0.05, BETA = 0.05;
+
+    /** Engines matched. */
+    private String _engine1 = "minmax", _engine2 = "mcts";
+    /** Board sizes played. */
+    private int[] _sizes = { Defaults.BOARD_SIZE };
+    /** Number of pairs of games per board size. */
+    private int _pairs = 50;
+    /** Per-move and per-game time limits, as for Game. */
+    private long _moveTime = Defaults.MOVE_TIME, _gameTime =
+        Defaults.GAME_TIME;
+    /** Seed from which openings and engine random numbers derive. */
+    private long _seed;
+    /** Number of random moves per side in each opening. */
+    private int _openingMoves = 2;
+    /** Number of games played at once. */
+    private int _concurrency = Runtime.getRuntime().availableProcessors();
+    /** Elo differences of the null and alternative SPRT hypotheses. */
+    private double _elo0 = 0, _elo1 = 5;
+    /** Name of the results file. */
+    private String _resultsName = "results.txt";
+    /** Name of the engines' opening book file (null for none). */
+    private String _bookName;
+    /** Name of the archive of game records (null for none). */
+    private String _recordsName;
+
+    /** Destination of results. */
+    private PrintWriter _results;
+    /** Wins and losses of engine 1, by size index. */
+    private int[] _wins, _losses;
+    /** Number of games that ended in an error. */
+    private int _failed;
+
+}
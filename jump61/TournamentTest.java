@@ -0,0 +1,67 @@
+package jump61;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of engine matches.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class TournamentTest extends TestCase {
+
+    @Test
+    public void testTournament() throws IOException {
+        Path path = Files.createTempFile("jump61", ".results");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+            err = new ByteArrayOutputStream();
+        String[] args = {
+            "--engines", "minmax,mcts", "--sizes", "2,3", "--pairs", "2",
+            "--movetime", "10", "--seed", "13", "--concurrency", "2",
+            "--out", path.toString()
+        };
+        try {
+            assertEquals("match failed", 0,
+                         Tournament.run(args, new PrintStream(out, true),
+                                        new PrintStream(err, true)));
+            assertEquals("errors reported", "", err.toString());
+            List<String> lines = Files.readAllLines(path);
+            String[] summary = out.toString().split("\\R");
+            assertTrue("no Elo estimate", summary.length > 1
+                       && summary[summary.length - 2].startsWith("Elo"));
+            for (String line : summary) {
+                assertTrue("summary not saved: " + line,
+                           lines.contains("# " + line));
+            }
+            int games, wins, losses, totals;
+            games = wins = losses = totals = 0;
+            for (String line : lines) {
+                if (!line.startsWith("#")) {
+                    games += 1;
+                } else if (line.startsWith("# size ")) {
+                    String[] words = line.split(" ");
+                    wins += Integer.parseInt(words[4]);
+                    losses += Integer.parseInt(words[6]);
+                } else if (line.startsWith("# total: ")) {
+                    String[] words = line.split(" ");
+                    totals += 1;
+                    assertEquals("wrong total", 8,
+                                 Integer.parseInt(words[3])
+                                 + Integer.parseInt(words[5]));
+                }
+            }
+            assertEquals("wrong number of games", 8, games);
+            assertEquals("wrong score", 8, wins + losses);
+            assertEquals("missing total", 1, totals);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package jump61;
+
+import java.util.Arrays;
+
+/** A fixed-size cache of search results indexed by position key.  Each
+ *  entry records the depth to which a position was searched, whether the
+ *  score found is exact or only a bound, the score, and the best move.
+ *  Entries are grouped in buckets of two: the first slot keeps the deepest
+ *  result seen (unless it is from an earlier search), and the second
+ *  always takes the newest.
+ *
+ *  A table may be shared by several searching threads without locking.
+ *  Each slot stores its key exclusive-or'ed with its data, so a slot
+ *  whose key and data were written by different threads at the same time
+ *  no longer matches either key and simply reads as a miss.  Concurrent
+ *  writers may overwrite each other's entries, which costs only a little
+ *  search effort, and used() is then approximate.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class TranspositionTable {
+
+    /** Bound type of an entry whose score is exact. */
+    static final int EXACT = 1;
+    /** Bound type of an entry whose score is a lower bound (the search
+     *  failed high). */
+    static final int LOWER = 2;
+    /** Bound type of an entry whose score is an upper bound (the search
+     *  failed low). */
+    static final int UPPER = 3;
+
+    /** Value returned by probe for a position not in the table. */
+    static final long MISS = 0;
+
+    /** A table holding 2**BITS entries. */
+    TranspositionTable(int bits) {
+        assert 1 <= bits && bits < 31;
+        _keys = new long[1 << bits];
+        _data = new long[1 << bits];
+        _mask = (1 << bits) - 2;
+    }
+
+    /** Returns the entry stored for the position whose key is KEY, or
+     *  MISS if there is none.  The parts of the result are extracted by
+     *  depth, bound, score and move. */
+    long probe(long key) {
+        int i = index(key);
+        if (holds(i, key)) {
+            return _data[i];
+        } else if (holds(i + 1, key)) {
+            return _data[i + 1];
+        }
+        return MISS;
+    }
+
+    /** Record that the position with key KEY, searched to depth DEPTH,
+     *  has score SCORE of bound type BOUND (EXACT, LOWER or UPPER) and
+     *  best move MOVE (-1 if none). */
+    void store(long key, int depth, int bound, int score, int move) {
+        assert 0 <= depth && depth <= MAX_DEPTH && move < MOVE_MASK;
+        long data = (long) depth << DEPTH_SHIFT | (long) bound << BOUND_SHIFT
+            | (long) _age << AGE_SHIFT | (long) (move + 1) << MOVE_SHIFT
+            | (score & SCORE_MASK);
+        int i = index(key);
+        long data0 = _data[i];
+        if (holds(i + 1, key)) {
+            i += 1;
+        } else if (!holds(i, key) && depth(data0) > depth
+                   && age(data0) == _age) {
+            i += 1;
+        }
+        if (_data[i] == MISS) {
+            _used += 1;
+        }
+        _keys[i] = key ^ data;
+        _data[i] = data;
+    }
+
+    /** Mark the start of a new search, so that entries from earlier
+     *  searches are replaced in preference to current ones. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, MISS);
+        _used = 0;
+    }
+
+    /** Returns the number of entries the table can hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Returns the number of slots that have been filled since the last
+     *  clear. */
+    int used() {
+        return _used;
+    }
+
+    /** Returns the search depth recorded in entry DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Returns the bound type recorded in entry DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Returns the score recorded in entry DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Returns the best move recorded in entry DATA, or -1 if none. */
+    static int move(long data) {
+        return ((int) (data >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    /** Returns the age recorded in entry DATA. */
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /** Returns true iff slot I holds an entry for KEY.  An empty slot
+     *  holds MISS, which is never the data of an entry (each has a bound
+     *  type), and so holds no entry even for the key 0. */
+    private boolean holds(int i, long key) {
+        long data = _data[i];
+        return data != MISS && (_keys[i] ^ data) == key;
+    }
+
+    /** Returns the index of the first slot of KEY's bucket. */
+    private int index(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask;
+    }
+
+    /** Largest depth that can be stored. */
+    static final int MAX_DEPTH = 63;
+
+    /** Layout of an entry: score in the low 32 bits, then the move plus
+     *  one, the age, the bound type and the depth. */
+    private static final long SCORE_MASK = 0xffffffffL;
+    /** Position and width of the move field. */
+    private static final int MOVE_SHIFT = 32, MOVE_MASK = (1 << 22) - 1;
+    /** Position and width of the age field. */
+    private static final int AGE_SHIFT = 54, AGE_MASK = 3;
+    /** Position and width of the bound field. */
+    private static final int BOUND_SHIFT = 56, BOUND_MASK = 3;
+    /** Position and width of the depth field. */
+    private static final int DEPTH_SHIFT = 58, DEPTH_MASK = MAX_DEPTH;
+
+    /** Position keys of the entries, each exclusive-or'ed with the
+     *  corresponding element of _data. */
+    private final long[] _keys;
+    /** Packed contents of the entries. */
+    private final long[] _data;
+    /** Mask selecting the first slot of a bucket from a key. */
+    private final int _mask;
+    /** Current search age. */
+    private int _age;
+    /** Number of filled slots. */
+    private int _used;
+
+}
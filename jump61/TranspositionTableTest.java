@@ -0,0 +1,81 @@
+package jump61;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.TestCase;
+
+/** Unit tests of the transposition table.
+ *  @author Iskander Rakhmanberdiyev
+ */
+public class TranspositionTableTest extends TestCase {
+
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable T = new TranspositionTable(4);
+        final long k0 = 4, k1 = 2, k2 = 18, k3 = 34;
+        assertEquals("not empty", TranspositionTable.MISS, T.probe(k1));
+        T.store(k1, 5, TranspositionTable.LOWER, -7, 12);
+        long entry = T.probe(k1);
+        assertEquals("wrong depth", 5, TranspositionTable.depth(entry));
+        assertEquals("wrong bound", TranspositionTable.LOWER,
+                     TranspositionTable.bound(entry));
+        assertEquals("wrong score", -7, TranspositionTable.score(entry));
+        assertEquals("wrong move", 12, TranspositionTable.move(entry));
+        T.store(k0, TranspositionTable.MAX_DEPTH, TranspositionTable.UPPER,
+                Integer.MIN_VALUE, -1);
+        entry = T.probe(k0);
+        assertEquals("wrong depth", TranspositionTable.MAX_DEPTH,
+                     TranspositionTable.depth(entry));
+        assertEquals("wrong bound", TranspositionTable.UPPER,
+                     TranspositionTable.bound(entry));
+        assertEquals("wrong score", Integer.MIN_VALUE,
+                     TranspositionTable.score(entry));
+        assertEquals("wrong move", -1, TranspositionTable.move(entry));
+
+        T.store(k2, 2, TranspositionTable.EXACT, 1, 1);
+        assertEquals("deeper entry replaced", 5,
+                     TranspositionTable.depth(T.probe(k1)));
+        assertEquals("shallower entry not stored", 1,
+                     TranspositionTable.move(T.probe(k2)));
+        T.store(k3, 1, TranspositionTable.EXACT, 3, 0);
+        assertEquals("newest entry not stored", 0,
+                     TranspositionTable.move(T.probe(k3)));
+        assertEquals("newest slot not replaced", TranspositionTable.MISS,
+                     T.probe(k2));
+        assertEquals("deepest entry replaced", 5,
+                     TranspositionTable.depth(T.probe(k1)));
+        T.store(k1, 2, TranspositionTable.EXACT, 4, 3);
+        entry = T.probe(k1);
+        assertEquals("entry not updated", 2, TranspositionTable.depth(entry));
+        assertEquals("entry not updated", 3, TranspositionTable.move(entry));
+        assertEquals("other slot changed", 0,
+                     TranspositionTable.move(T.probe(k3)));
+
+        T.store(k2, 9, TranspositionTable.EXACT, 5, 6);
+        assertEquals("deeper entry not kept first", TranspositionTable.MISS,
+                     T.probe(k1));
+        T.newSearch();
+        T.store(k1, 1, TranspositionTable.EXACT, 4, 3);
+        assertEquals("old entry kept", TranspositionTable.MISS, T.probe(k2));
+        assertEquals("new entry not stored", 3,
+                     TranspositionTable.move(T.probe(k1)));
+        assertEquals("newest slot replaced", 0,
+                     TranspositionTable.move(T.probe(k3)));
+        assertEquals("wrong count", 3, T.used());
+        T.clear();
+        assertEquals("not cleared", TranspositionTable.MISS, T.probe(k0));
+        assertEquals("not cleared", 0, T.used());
+
+        assertEquals("empty slot read as key 0", TranspositionTable.MISS,
+                     T.probe(0));
+        T.store(0, 3, TranspositionTable.EXACT, 8, 2);
+        entry = T.probe(0);
+        assertEquals("key 0 lost", 3, TranspositionTable.depth(entry));
+        assertEquals("key 0 lost", 2, TranspositionTable.move(entry));
+        T.store(0, 1, TranspositionTable.LOWER, 9, 5);
+        assertEquals("key 0 not updated", 5,
+                     TranspositionTable.move(T.probe(0)));
+        assertEquals("key 0 stored twice", 1, T.used());
+    }
+
+}
@@ -11,6 +11,16 @@ public class UnitTest {
     public static void main(String[] ignored) {
         textui.runClasses(jump61.BoardTest.class);
         textui.runClasses(jump61.GameTest.class);
+        textui.runClasses(jump61.TranspositionTableTest.class);
+        textui.runClasses(jump61.AITest.class);
+        textui.runClasses(jump61.PerftTest.class);
+        textui.runClasses(jump61.TournamentTest.class);
+        textui.runClasses(jump61.OpeningBookTest.class);
+        textui.runClasses(jump61.TablebaseTest.class);
+        textui.runClasses(jump61.CommandReaderTest.class);
+        textui.runClasses(jump61.GameRecordTest.class);
+        textui.runClasses(jump61.EngineTest.class);
+        textui.runClasses(jump61.CascadeTest.class);
     }
 
 }
@@ -0,0 +1,43 @@
+package jump61;
+
+/** Zobrist keys for Jump61 positions.  The key of a position is the
+ *  exclusive or of square(N, CELL) over all squares #N with packed
+ *  contents CELL (see MutableBoard.pack), together with SIDE if blue is
+ *  to move.  Rather than storing a random table for every board size,
+ *  square keys are generated on demand by a fixed bit-mixing function,
+ *  which costs a couple of multiplications and no memory.
+ *  @author Iskander Rakhmanberdiyev
+ */
+final class Zobrist {
+
+    /** Not instantiable. */
+    private Zobrist() {
+    }
+
+    /** Returns the key contributed by square #N when its packed contents
+     *  are CELL.  Empty squares contribute 0, so that the key of an empty
+     *  board is 0. */
+    static long square(int n, int cell) {
+        if (cell == 0) {
+            return 0;
+        }
+        return mix(((long) n << 8 | cell) * GOLDEN + SEED);
+    }
+
+    /** Returns a well-scrambled function of Z (the splitmix64
+     *  finalizer). */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Key included iff blue is to move. */
+    static final long SIDE = mix(0x3C6EF372FE94F82BL);
+
+    /** Multiplier spreading consecutive inputs over the key space. */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    /** Arbitrary offset distinguishing square keys from SIDE. */
+    private static final long SEED = 0x6A09E667F3BCC908L;
+
+}